@@ -1,14 +1,44 @@
 package com.prinjsystems.asctlib;
 
+import java.util.Collection;
+import java.util.Collections;
+
 /**
  * The "main" class of an ASCT mod should extend this class to be recognized by ASCT.
  * The {@link #startup()} method will be executed before the game initialization procedure, that will search for all
  * the tiles containing the {@link PlaceableTile} annotation.
+ * <p>
+ * Mods are discovered by {@link ModLoader} through {@link java.util.ServiceLoader}, so the mod jar needs to list its
+ * main class in {@code META-INF/services/com.prinjsystems.asctlib.ASCTMod}. The class also needs a public no-args
+ * constructor.
  */
 public abstract class ASCTMod {
     /**
      * Method called by ASCT before the game initialization procedure.
      * Should be used to register necessary tile categories, if they exist.
+     * <p>
+     * Mods that don't depend on each other may have this method called at the same time from different threads, so
+     * it should only touch thread-safe structures, like {@link TileCategoryHolder}.
      */
     public abstract void startup();
+
+    /**
+     * Unique identifier of this mod, used by other mods to declare a dependency on it. By default it is the fully
+     * qualified name of the mod class.
+     *
+     * @return Identifier of this mod.
+     */
+    public String getId() {
+        return getClass().getName();
+    }
+
+    /**
+     * Identifiers of the mods that need to finish their {@link #startup()} before this mod's startup begins. For
+     * example, a mod that adds tiles to a category registered by another mod should depend on it.
+     *
+     * @return Identifiers of the mods this mod depends on. Empty by default.
+     */
+    public Collection<String> getDependencies() {
+        return Collections.emptyList();
+    }
 }
@@ -0,0 +1,158 @@
+package com.prinjsystems.asctlib;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Finds all the {@link ASCTMod}s available in the classpath and runs their {@link ASCTMod#startup()} methods.
+ * <p>
+ * Mods are found using {@link ServiceLoader}. The startup of a mod only begins after all of its dependencies (see
+ * {@link ASCTMod#getDependencies()}) have finished their own startup, and mods that don't depend on each other are
+ * started in parallel.
+ */
+public class ModLoader {
+    private final Map<String, ASCTMod> mods;
+
+    /**
+     * Creates a ModLoader for an already known list of mods.
+     *
+     * @param mods Mods that will be started by this loader.
+     */
+    public ModLoader(List<ASCTMod> mods) {
+        this.mods = new LinkedHashMap<>();
+        for (ASCTMod mod : mods) {
+            if (this.mods.put(mod.getId(), mod) != null) {
+                throw new IllegalArgumentException("Mod '" + mod.getId() + "' was found more than once!");
+            }
+        }
+    }
+
+    /**
+     * Will search for all mods available to the context class loader.
+     *
+     * @return ModLoader containing all the mods found.
+     */
+    public static ModLoader load() {
+        return load(Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * Will search for all mods available to a class loader.
+     *
+     * @param classLoader Class loader used to find the mods.
+     * @return ModLoader containing all the mods found.
+     */
+    public static ModLoader load(ClassLoader classLoader) {
+        List<ASCTMod> found = new ArrayList<>();
+        for (ASCTMod mod : ServiceLoader.load(ASCTMod.class, classLoader)) {
+            found.add(mod);
+        }
+        return new ModLoader(found);
+    }
+
+    /**
+     * @return Unmodifiable list of the mods in this loader, in the order they were found.
+     */
+    public List<ASCTMod> getMods() {
+        return Collections.unmodifiableList(new ArrayList<>(mods.values()));
+    }
+
+    /**
+     * Runs the startup of all mods, using one thread per available processor. Returns when all of them finished.
+     */
+    public void startup() {
+        int threads = Math.max(1, Math.min(mods.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "ASCT mod startup");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            startup(executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Runs the startup of all mods in an executor. Returns when all of them finished.
+     * If the startup of a mod throws an exception, the mods that depend on it are not started, and the exception is
+     * rethrown here after all the other mods finished.
+     *
+     * @param executor Executor used to run the startup of the mods.
+     * @throws IllegalStateException If a mod depends on a mod that doesn't exist, or if there is a dependency cycle.
+     */
+    public void startup(Executor executor) {
+        checkDependencies();
+
+        Map<String, CompletableFuture<Void>> started = new HashMap<>();
+        for (String id : mods.keySet()) {
+            schedule(id, executor, started);
+        }
+        try {
+            CompletableFuture.allOf(started.values().toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private CompletableFuture<Void> schedule(String id, Executor executor,
+                                             Map<String, CompletableFuture<Void>> started) {
+        CompletableFuture<Void> future = started.get(id);
+        if (future != null) {
+            return future;
+        }
+
+        ASCTMod mod = mods.get(id);
+        List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+        for (String dependency : mod.getDependencies()) {
+            dependencies.add(schedule(dependency, executor, started));
+        }
+        future = CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[0]))
+                .thenRunAsync(mod::startup, executor);
+        started.put(id, future);
+        return future;
+    }
+
+    private void checkDependencies() {
+        Set<String> done = new HashSet<>();
+        for (String id : mods.keySet()) {
+            checkDependencies(id, new HashSet<>(), done);
+        }
+    }
+
+    private void checkDependencies(String id, Set<String> visiting, Set<String> done) {
+        if (done.contains(id)) {
+            return;
+        }
+        if (!visiting.add(id)) {
+            throw new IllegalStateException("Mod '" + id + "' is part of a dependency cycle!");
+        }
+        for (String dependency : mods.get(id).getDependencies()) {
+            if (!mods.containsKey(dependency)) {
+                throw new IllegalStateException("Mod '" + id + "' depends on '" + dependency
+                        + "', that was not found!");
+            }
+            checkDependencies(dependency, visiting, done);
+        }
+        visiting.remove(id);
+        done.add(id);
+    }
+}
@@ -1,21 +1,24 @@
 package com.prinjsystems.asctlib;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Singleton class that holds the categories of ASCT tiles.
  * Categories in ASCT are used to separate one type of tile from another, into different tabs inside the game. Each
  * category is a different tab.
+ * <p>
+ * This class is thread-safe, since mods may register their categories in parallel (see {@link ModLoader}).
  */
 public class TileCategoryHolder {
     private static final TileCategoryHolder instance = new TileCategoryHolder();
 
-    private List<TileCategory> categories;
+    private final List<TileCategory> categories;
 
     private TileCategoryHolder() {
-        categories = new ArrayList<>();
+        // Categories are registered a handful of times at startup and read a lot after that
+        categories = new CopyOnWriteArrayList<>();
         registerCategory("structural");
         registerCategory("logic");
     }
@@ -33,7 +36,7 @@ public class TileCategoryHolder {
      *
      * @param category Category to be registered.
      */
-    public void registerCategory(String category) {
+    public synchronized void registerCategory(String category) {
         for (TileCategory ctg : categories) {
             if (ctg.getName().equals(category.toLowerCase())) {
                 throw new IllegalArgumentException("Category '" + category + "' already exists!");
@@ -0,0 +1,120 @@
+package com.prinjsystems.asctlib.circuits;
+
+import com.prinjsystems.asctlib.structures.ActionTile;
+import com.prinjsystems.asctlib.structures.GameMap;
+import com.prinjsystems.asctlib.structures.Layer;
+import com.prinjsystems.asctlib.structures.Tile;
+import com.prinjsystems.asctlib.structures.conductors.ConductorTile;
+import com.prinjsystems.asctlib.structures.conductors.semiconductors.NSilicon;
+import com.prinjsystems.asctlib.structures.conductors.semiconductors.Transistor;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Extracts the conductor network of a map into a {@link Netlist}.
+ * <p>
+ * Conductors are grouped into a net when they are in contact, of the same type and spread power to each other (see
+ * {@link ConductorTile#canCompileWith(ConductorTile)}). Transistors are never part of a net, they are instead what
+ * connects the nets together, along with vias.
+ */
+public final class CircuitCompiler {
+    private CircuitCompiler() {
+    }
+
+    /**
+     * @param map Map to extract the netlist from.
+     * @return Netlist of all the layers of the map.
+     */
+    public static Netlist extract(GameMap map) {
+        Netlist netlist = new Netlist();
+        for (Layer layer : map.getLayers()) {
+            extract(layer, netlist);
+        }
+        extractVias(map.getViaIndex().getVias(), netlist);
+        return netlist;
+    }
+
+    /**
+     * @param layer Layer to extract the netlist from.
+     * @return Netlist of the layer. Vias to other layers are included, but the nets on the other side are not.
+     */
+    public static Netlist extract(Layer layer) {
+        Netlist netlist = new Netlist();
+        extract(layer, netlist);
+        extractVias(layer.getTiles(ConductorTile.class), netlist);
+        return netlist;
+    }
+
+    private static void extract(Layer layer, Netlist netlist) {
+        Set<ConductorTile> visited = newIdentitySet();
+        for (ConductorTile tile : layer.getTiles(ConductorTile.class)) {
+            if (tile.isCompilable() && !visited.contains(tile)) {
+                netlist.addNet(findNet(layer, tile, visited));
+            }
+        }
+
+        for (Transistor transistor : layer.getTiles(Transistor.class)) {
+            List<Net> gates = new ArrayList<>();
+            List<Net> channels = new ArrayList<>();
+            for (Tile t : layer.getTilesAround(transistor.getPosX(), transistor.getPosY())) {
+                Net net = netlist.getNet(t);
+                if (net == null) {
+                    continue;
+                }
+                List<Net> list = t instanceof NSilicon ? gates : channels;
+                if (!list.contains(net)) {
+                    list.add(net);
+                }
+            }
+            netlist.addTransistor(transistor, gates, channels);
+        }
+    }
+
+    private static void extractVias(List<ConductorTile> tiles, Netlist netlist) {
+        for (ConductorTile tile : tiles) {
+            ActionTile connectedTo = tile.getConnectedTo();
+            if (connectedTo == null) {
+                continue;
+            }
+            if (netlist.isVia(connectedTo)) {
+                continue; // Both sides of a via point to each other, so only one of them is added
+            }
+            netlist.addVia(new Netlist.Via(tile, connectedTo, netlist.getNet(tile), netlist.getNet(connectedTo)));
+        }
+    }
+
+    /**
+     * Will find all the tiles of the net that contains a tile, by flood filling from it.
+     *
+     * @param layer   Layer of the tile.
+     * @param seed    Tile that is part of the net.
+     * @param visited Tiles that were already visited. The tiles of the net will be added to it.
+     * @return The net containing the tile.
+     */
+    static Net findNet(Layer layer, ConductorTile seed, Set<ConductorTile> visited) {
+        List<ConductorTile> tiles = new ArrayList<>();
+        Deque<ConductorTile> stack = new ArrayDeque<>();
+        visited.add(seed);
+        stack.push(seed);
+        while (!stack.isEmpty()) {
+            ConductorTile t = stack.pop();
+            tiles.add(t);
+            for (Tile n : layer.getTilesAround(t.getPosX(), t.getPosY())) {
+                if (n instanceof ConductorTile && !visited.contains(n) && t.canCompileWith((ConductorTile) n)) {
+                    visited.add((ConductorTile) n);
+                    stack.push((ConductorTile) n);
+                }
+            }
+        }
+        return new Net(layer, tiles);
+    }
+
+    static <T> Set<T> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+}
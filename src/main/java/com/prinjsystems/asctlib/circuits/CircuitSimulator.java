@@ -0,0 +1,286 @@
+package com.prinjsystems.asctlib.circuits;
+
+import com.prinjsystems.asctlib.structures.GameMap;
+import com.prinjsystems.asctlib.structures.Layer;
+import com.prinjsystems.asctlib.structures.LayerListener;
+import com.prinjsystems.asctlib.structures.conductors.ConductorTile;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Simulates the compiled nets of a {@link GameMap}. Created by the map itself when circuit compilation is enabled
+ * (see {@link GameMap#setCircuitCompilation(boolean)}).
+ * <p>
+ * Without compilation, power goes through a wire one tile per tick. When a net is compiled, only its ports (see
+ * {@link Net}) are simulated: when a port gets powered, the simulator schedules every other port of the net to be
+ * powered at the same tick the wavefront would have reached it, so circuits built from compiled nets keep the exact
+ * same timing, and cost as much as their number of ports, no matter how long their wires are.
+ * <p>
+ * Differences from the tile by tile simulation:
+ * <ul>
+ * <li>Tiles between the ports are not powered (they are rendered as powered while power goes through the net), so
+ * they don't heat up from power going through them.</li>
+ * <li>Pulses that are going through a net when it is edited are lost, as if the wire was cut.</li>
+ * </ul>
+ * Nets are only compiled when all of their tiles are idle, and are automatically recompiled when any tile in or
+ * around them is added, removed, moved or has its vias changed. Nets with tiles that melt go back to being
+ * simulated tile by tile.
+ */
+public class CircuitSimulator implements LayerListener {
+    /**
+     * Nets with more ports than this are not compiled, since precomputing the delays between each pair of ports
+     * would take too long.
+     */
+    public static final int MAX_PORTS = 256;
+
+    private final GameMap map;
+    private final Map<Layer, LayerState> layers;
+    private long tick;
+    private int minimumNetSize = 16;
+    private boolean delivering;
+
+    public CircuitSimulator(GameMap map) {
+        this.map = map;
+        layers = new IdentityHashMap<>();
+    }
+
+    /**
+     * @return Current tick of the simulation. Incremented every time the map ticks.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    public int getMinimumNetSize() {
+        return minimumNetSize;
+    }
+
+    /**
+     * Sets the minimum amount of tiles a net needs to have to be compiled. Small nets are faster to simulate tile
+     * by tile. Only affects nets compiled after this is called.
+     *
+     * @param minimumNetSize Minimum net size.
+     */
+    public void setMinimumNetSize(int minimumNetSize) {
+        this.minimumNetSize = minimumNetSize;
+    }
+
+    /**
+     * @return All the nets that are currently compiled.
+     */
+    public List<Net> getCompiledNets() {
+        List<Net> result = new ArrayList<>();
+        for (LayerState state : layers.values()) {
+            result.addAll(state.nets);
+        }
+        return result;
+    }
+
+    /**
+     * Called by the map before each tick. Compiles the nets of new layers and the nets that were edited.
+     */
+    public void beforeTick() {
+        tick++;
+        Set<Layer> current = CircuitCompiler.newIdentitySet();
+        current.addAll(map.getLayers());
+        for (Iterator<Map.Entry<Layer, LayerState>> it = layers.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Layer, LayerState> entry = it.next();
+            if (!current.contains(entry.getKey())) {
+                entry.getValue().dissolveAll();
+                entry.getKey().removeListener(this);
+                it.remove();
+            }
+        }
+        for (Layer layer : map.getLayers()) {
+            LayerState state = layers.get(layer);
+            if (state == null) {
+                state = new LayerState(layer);
+                state.pending.addAll(layer.getTiles(ConductorTile.class));
+                layers.put(layer, state);
+                layer.addListener(this);
+            }
+            state.started = false;
+            if (!state.retry.isEmpty() && tick >= state.retryAt) {
+                state.pending.addAll(state.retry);
+                state.retry.clear();
+            }
+            if (!state.pending.isEmpty()) {
+                state.compile();
+            }
+        }
+    }
+
+    /**
+     * Called by a layer after it decided which tiles will tick this tick.
+     *
+     * @param layer Layer that is ticking.
+     */
+    public void layerStarted(Layer layer) {
+        LayerState state = layers.get(layer);
+        if (state != null) {
+            state.started = true;
+        }
+    }
+
+    /**
+     * Called by a layer after its tiles ticked, to power the ports that the power reached this tick.
+     *
+     * @param layer Layer that is ticking.
+     */
+    public void deliver(Layer layer) {
+        LayerState state = layers.get(layer);
+        if (state == null) {
+            return;
+        }
+        delivering = true;
+        try {
+            while (!state.events.isEmpty() && state.events.peek().tick <= tick) {
+                Event e = state.events.poll();
+                if (e.net.isCompiled() && e.net.reaches(e.port, e.tick)) {
+                    ConductorTile port = e.net.getPort(e.port);
+                    port.trySetPowered(true, port);
+                }
+            }
+        } finally {
+            delivering = false;
+        }
+    }
+
+    /**
+     * Removes all the compiled nets from the map. Their tiles will be simulated one at a time again.
+     */
+    public void dispose() {
+        for (Map.Entry<Layer, LayerState> entry : layers.entrySet()) {
+            entry.getValue().dissolveAll();
+            entry.getKey().removeListener(this);
+        }
+        layers.clear();
+    }
+
+    @Override
+    public void tilesChanged(Layer layer, int x, int y, int width, int height) {
+        LayerState state = layers.get(layer);
+        if (state == null) {
+            return;
+        }
+        // Tiles around the region are included, since they may have stopped or started being ports
+        layer.forEachTile(ConductorTile.class, x - 1, y - 1, width + 2, height + 2, t -> {
+            if (t.getNet() != null) {
+                state.dissolve(t.getNet());
+            } else {
+                state.pending.add(t);
+            }
+        });
+    }
+
+    /**
+     * Called when a tile of a compiled net is powered from outside the net.
+     */
+    void inject(Net net, ConductorTile tile) {
+        if (delivering) {
+            return; // Ports powered by the net itself don't spread the power again
+        }
+        LayerState state = layers.get(net.getLayer());
+        // The powered tile only ticks in the next tick if its layer already decided what will tick in this one.
+        // Power takes one tick to reach its neighbours from there, and one more for each tile after that.
+        net.propagate(tile, state.started ? tick + 1 : tick);
+    }
+
+    void schedule(Net net, int port, long at) {
+        layers.get(net.getLayer()).events.add(new Event(at, net, port));
+    }
+
+    void dissolve(Net net) {
+        LayerState state = layers.get(net.getLayer());
+        if (state != null) {
+            state.dissolve(net);
+        }
+    }
+
+    private class LayerState {
+        private final Layer layer;
+        private final List<Net> nets;
+        private final Set<ConductorTile> pending; // Tiles that need to be checked for compilation
+        private final List<ConductorTile> retry; // Tiles of nets that were busy the last time they were checked
+        private final PriorityQueue<Event> events;
+        private boolean started;
+        private long retryAt;
+        private int retryDelay = 1;
+
+        LayerState(Layer layer) {
+            this.layer = layer;
+            nets = new ArrayList<>();
+            pending = CircuitCompiler.newIdentitySet();
+            retry = new ArrayList<>();
+            events = new PriorityQueue<>(Comparator.comparingLong(e -> e.tick));
+        }
+
+        void compile() {
+            boolean busy = false;
+            Set<ConductorTile> visited = CircuitCompiler.newIdentitySet();
+            for (ConductorTile seed : pending) {
+                if (visited.contains(seed) || seed.getNet() != null || !seed.isCompilable()
+                        || seed.getLayer() != layer || layer.getTile(seed.getPosX(), seed.getPosY()) != seed) {
+                    continue;
+                }
+                Net net = CircuitCompiler.findNet(layer, seed, visited);
+                if (net.size() < minimumNetSize || net.getPortCount() > MAX_PORTS) {
+                    continue;
+                }
+                if (!isIdle(net)) {
+                    retry.add(seed); // Power is going through it right now, try again later
+                    busy = true;
+                    continue;
+                }
+                net.bind(CircuitSimulator.this);
+                nets.add(net);
+            }
+            pending.clear();
+            // Nets that are always busy would be flood filled every tick, so they are checked less and less often
+            retryDelay = busy ? Math.min(retryDelay * 2, 256) : 1;
+            retryAt = tick + retryDelay;
+        }
+
+        private boolean isIdle(Net net) {
+            for (ConductorTile t : net.getTiles()) {
+                if (t.isPowered() || !t.canReceivePower() || t.isMolten()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void dissolve(Net net) {
+            if (nets.remove(net)) {
+                net.unbind();
+                pending.addAll(net.getTiles());
+            }
+        }
+
+        void dissolveAll() {
+            for (Net net : nets) {
+                net.unbind();
+            }
+            nets.clear();
+            events.clear();
+        }
+    }
+
+    private static class Event {
+        private final long tick;
+        private final Net net;
+        private final int port;
+
+        Event(long tick, Net net, int port) {
+            this.tick = tick;
+            this.net = net;
+            this.port = port;
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package com.prinjsystems.asctlib.circuits;
+
+import com.prinjsystems.asctlib.structures.ActionTile;
+import com.prinjsystems.asctlib.structures.Layer;
+import com.prinjsystems.asctlib.structures.Tile;
+import com.prinjsystems.asctlib.structures.TimerWheel;
+import com.prinjsystems.asctlib.structures.conductors.ConductorTile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.prinjsystems.asctlib.structures.Layer.LAYER_SIZE;
+
+/**
+ * A Net is a group of conductors of the same type, in contact with each other inside a layer, that spread power to
+ * each other. Power reaching any tile of the net will reach all the others, one tile further each tick.
+ * <p>
+ * The ports of a net are the tiles in contact with action tiles that are not part of it, and vias. They are the
+ * only tiles where power can enter or leave the net, so when the net is compiled only the ports are simulated, and
+ * the time the power takes to go from one port to another (the length of the shortest path between them) is
+ * precomputed.
+ */
+public class Net {
+    private final Layer layer;
+    private final ConductorTile[] tiles;
+    private final Map<Integer, Integer> cells; // Cell index in the layer -> index in tiles
+    private final int[] ports; // Index in tiles of each port
+    private final int[] portIndex; // Index in ports of each tile, or -1 if the tile is not a port
+    private final int minX, minY, maxX, maxY;
+
+    private CircuitSimulator simulator; // Not null while compiled
+    private int[][] delays; // Delays between each pair of ports
+    private int[] reach; // Distance from each port to the tile farthest from it
+    private final List<Wave> waves = new ArrayList<>(); // Wavefronts whose tiles may still be recovering
+    private long litUntil = -1;
+    private TimerWheel.Timer darken; // Repaints the net once it stops being lit
+
+    Net(Layer layer, List<ConductorTile> tiles) {
+        this.layer = layer;
+        this.tiles = tiles.toArray(new ConductorTile[0]);
+        cells = new HashMap<>();
+        int minX = LAYER_SIZE, minY = LAYER_SIZE, maxX = 0, maxY = 0;
+        for (int i = 0; i < this.tiles.length; i++) {
+            ConductorTile t = this.tiles[i];
+            cells.put(t.getPosX() + t.getPosY() * LAYER_SIZE, i);
+            minX = Math.min(minX, t.getPosX());
+            minY = Math.min(minY, t.getPosY());
+            maxX = Math.max(maxX, t.getPosX());
+            maxY = Math.max(maxY, t.getPosY());
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+
+        List<Integer> ports = new ArrayList<>();
+        portIndex = new int[this.tiles.length];
+        for (int i = 0; i < this.tiles.length; i++) {
+            if (isPort(this.tiles[i])) {
+                portIndex[i] = ports.size();
+                ports.add(i);
+            } else {
+                portIndex[i] = -1;
+            }
+        }
+        this.ports = ports.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private boolean isPort(ConductorTile tile) {
+        if (tile.getConnectedTo() != null) {
+            return true;
+        }
+        for (Tile t : layer.getTilesAround(tile.getPosX(), tile.getPosY())) {
+            if (t instanceof ActionTile && !contains(t)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Layer getLayer() {
+        return layer;
+    }
+
+    /**
+     * @return Unmodifiable list of all the tiles of this net.
+     */
+    public List<ConductorTile> getTiles() {
+        return Collections.unmodifiableList(Arrays.asList(tiles));
+    }
+
+    /**
+     * @return All the ports of this net.
+     */
+    public List<ConductorTile> getPorts() {
+        List<ConductorTile> result = new ArrayList<>(ports.length);
+        for (int port : ports) {
+            result.add(tiles[port]);
+        }
+        return result;
+    }
+
+    public int size() {
+        return tiles.length;
+    }
+
+    int getPortCount() {
+        return ports.length;
+    }
+
+    ConductorTile getPort(int port) {
+        return tiles[ports[port]];
+    }
+
+    /**
+     * @param tile Tile to check.
+     * @return If the tile is part of this net.
+     */
+    public boolean contains(Tile tile) {
+        Integer i = cells.get(tile.getPosX() + tile.getPosY() * LAYER_SIZE);
+        return i != null && tiles[i] == tile;
+    }
+
+    /**
+     * @return If this net is currently being simulated by a {@link CircuitSimulator}.
+     */
+    public boolean isCompiled() {
+        return simulator != null;
+    }
+
+    /**
+     * Called by the tiles of this net when they get powered by something outside of the net.
+     *
+     * @param tile Tile that got powered.
+     */
+    public void powered(ConductorTile tile) {
+        if (simulator != null) {
+            simulator.inject(this, tile);
+        }
+    }
+
+    /**
+     * Called by the tiles of this net when they melt. The net is dissolved, since molten tiles can't be compiled.
+     */
+    public void melted() {
+        if (simulator != null) {
+            simulator.dissolve(this);
+        }
+    }
+
+    /**
+     * Schedules all the ports that will be powered from a tile of this net.
+     * <p>
+     * Tile by tile, each tile a wavefront goes through can't be powered again until it recovers (see {@link
+     * ActionTile#getUnpoweredDelay()}). Power that enters the net where a wavefront passed less than that many ticks
+     * ago is stopped right away, and power that enters it ahead of a wavefront joins it, so that every port is only
+     * reached by whichever side of the wavefront gets there first.
+     *
+     * @param tile    Tile of this net that was powered.
+     * @param ticksAt Tick the powered tile will tick at.
+     */
+    void propagate(ConductorTile tile, long ticksAt) {
+        int i = cells.get(tile.getPosX() + tile.getPosY() * LAYER_SIZE);
+        int port = portIndex[i];
+        // Power from outside the net can only come through ports, unless something powered the tile directly
+        int[] distances = port < 0 ? distancesFrom(i) : null;
+        int recovery = tile.getUnpoweredDelay();
+        waves.removeIf(w -> w.until + recovery <= ticksAt);
+
+        Wave ahead = null; // First wavefront still on its way to the tile
+        long aheadAt = Long.MAX_VALUE;
+        for (Wave w : waves) {
+            long at = port >= 0 ? w.arrivals[port] : w.arrivalAt(distances);
+            if (at <= ticksAt && ticksAt < at + recovery) {
+                return; // Still recovering from it
+            }
+            if (at > ticksAt && at < aheadAt) {
+                ahead = w;
+                aheadAt = at;
+            }
+        }
+        if (ahead == null) {
+            // All the wavefronts already went through the tile and recovered, so they are always ahead of this one
+            ahead = new Wave(ports.length);
+            waves.add(ahead);
+        }
+
+        int[] toPorts = port >= 0 ? delays[port] : toPorts(distances);
+        for (int p = 0; p < toPorts.length; p++) {
+            long at = ticksAt + toPorts[p];
+            if (at < ahead.arrivals[p]) {
+                // Any delivery scheduled before for the port is dropped, see reaches(int, long)
+                ahead.arrivals[p] = at;
+                if (toPorts[p] > 0) {
+                    simulator.schedule(this, p, at - 1);
+                }
+            }
+        }
+        ahead.sources.add(i);
+        ahead.startedAt.add(ticksAt);
+        int farthest = port >= 0 ? reach[port] : Arrays.stream(distances).max().orElse(0);
+        ahead.until = Math.min(ahead.until, ticksAt + farthest);
+        light(ahead.until - 1);
+    }
+
+    /**
+     * @param port Index of a port.
+     * @param at   Tick a delivery to the port was scheduled at.
+     * @return If the port still has to be powered at that tick, false if another side of the wavefront reached it
+     * first.
+     */
+    boolean reaches(int port, long at) {
+        for (Wave w : waves) {
+            if (w.arrivals[port] - 1 == at) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return If power is currently going through this net. Used to render the tiles between the ports as powered.
+     */
+    public boolean isLit() {
+        return simulator != null && simulator.getTick() <= litUntil;
+    }
+
+    /**
+     * Makes this net lit until a tick. Its tiles are repainted when it starts and stops being lit, since they don't
+     * change themselves.
+     */
+    void light(long until) {
+        boolean wasLit = isLit();
+        litUntil = Math.max(litUntil, until);
+        if (!isLit()) {
+            return;
+        }
+        if (!wasLit) {
+            repaint();
+        }
+        // The wheel of the layer counts the same ticks as the simulator, but it may not have advanced yet this tick,
+        // so the timer is set to the tick after the net stops being lit, at worst
+        TimerWheel timers = layer.getTimers();
+        long at = timers.getTick() + litUntil - simulator.getTick() + 2;
+        if (darken == null) {
+            darken = new TimerWheel.Timer() {
+                @Override
+                protected void expire() {
+                    repaint();
+                }
+            };
+        }
+        if (!darken.isScheduled() || darken.getExpiresAt() < at) {
+            timers.schedule(darken, at);
+        }
+    }
+
+    private void repaint() {
+        layer.tilesRepainted(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    int getMinX() {
+        return minX;
+    }
+
+    int getMinY() {
+        return minY;
+    }
+
+    int getMaxX() {
+        return maxX;
+    }
+
+    int getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Compiles this net, so that it will be simulated by a simulator. Its tiles will stop spreading power to each
+     * other.
+     */
+    void bind(CircuitSimulator simulator) {
+        delays = new int[ports.length][];
+        reach = new int[ports.length];
+        for (int p = 0; p < ports.length; p++) {
+            int[] distances = distancesFrom(ports[p]);
+            delays[p] = toPorts(distances);
+            for (int distance : distances) {
+                reach[p] = Math.max(reach[p], distance);
+            }
+        }
+        this.simulator = simulator;
+        for (ConductorTile t : tiles) {
+            t.setNet(this);
+        }
+    }
+
+    /**
+     * Undoes {@link #bind(CircuitSimulator)}. The tiles of this net will go back to being simulated one at a time.
+     */
+    void unbind() {
+        boolean wasLit = isLit();
+        if (darken != null && darken.isScheduled()) {
+            darken.getWheel().cancel(darken);
+        }
+        for (ConductorTile t : tiles) {
+            if (t.getNet() == this) {
+                t.setNet(null);
+            }
+        }
+        simulator = null;
+        delays = null;
+        waves.clear();
+        if (wasLit) {
+            repaint(); // Not lit anymore
+        }
+    }
+
+    private int[] toPorts(int[] distances) {
+        int[] result = new int[ports.length];
+        for (int p = 0; p < ports.length; p++) {
+            result[p] = distances[ports[p]];
+        }
+        return result;
+    }
+
+    private int[] distancesFrom(int start) {
+        int[] distances = new int[tiles.length];
+        Arrays.fill(distances, -1);
+        int[] queue = new int[tiles.length];
+        int head = 0, tail = 0;
+        distances[start] = 0;
+        queue[tail++] = start;
+        while (head < tail) {
+            int i = queue[head++];
+            int x = tiles[i].getPosX();
+            int y = tiles[i].getPosY();
+            tail = visit(x - 1, y, distances[i], distances, queue, tail);
+            tail = visit(x + 1, y, distances[i], distances, queue, tail);
+            tail = visit(x, y - 1, distances[i], distances, queue, tail);
+            tail = visit(x, y + 1, distances[i], distances, queue, tail);
+        }
+        return distances;
+    }
+
+    private int visit(int x, int y, int distance, int[] distances, int[] queue, int tail) {
+        if (x < 0 || y < 0 || x >= LAYER_SIZE || y >= LAYER_SIZE) {
+            return tail;
+        }
+        Integer n = cells.get(x + y * LAYER_SIZE);
+        if (n != null && distances[n] < 0) {
+            distances[n] = distance + 1;
+            queue[tail++] = n;
+        }
+        return tail;
+    }
+
+    /**
+     * A wavefront going through the net, from all the tiles where the power entered it.
+     */
+    private static class Wave {
+        private final List<Integer> sources = new ArrayList<>(); // Index in tiles of the tiles the power entered
+        private final List<Long> startedAt = new ArrayList<>(); // Tick each source ticked at
+        private final long[] arrivals; // Tick each port ticks at when the wavefront reaches it
+        private long until = Long.MAX_VALUE; // Tick the last tile reached by the wavefront ticks at, at most
+
+        Wave(int ports) {
+            arrivals = new long[ports];
+            Arrays.fill(arrivals, Long.MAX_VALUE);
+        }
+
+        /**
+         * @param distances Distances from a tile to all the tiles of the net.
+         * @return Tick the tile ticks at when the wavefront reaches it.
+         */
+        long arrivalAt(int[] distances) {
+            long result = Long.MAX_VALUE;
+            for (int s = 0; s < sources.size(); s++) {
+                result = Math.min(result, startedAt.get(s) + distances[sources.get(s)]);
+            }
+            return result;
+        }
+    }
+}
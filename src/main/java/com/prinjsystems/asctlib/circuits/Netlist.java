@@ -0,0 +1,140 @@
+package com.prinjsystems.asctlib.circuits;
+
+import com.prinjsystems.asctlib.structures.ActionTile;
+import com.prinjsystems.asctlib.structures.Tile;
+import com.prinjsystems.asctlib.structures.conductors.ConductorTile;
+import com.prinjsystems.asctlib.structures.conductors.semiconductors.Transistor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Graph of the conductor network of a map, as extracted by {@link CircuitCompiler}. The nodes are the {@link Net}s
+ * (wires), that are connected by transistors and vias.
+ */
+public class Netlist {
+    private final List<Net> nets;
+    private final Map<ConductorTile, Net> netOf;
+    private final Map<Transistor, List<Net>> gateNets;
+    private final Map<Transistor, List<Net>> channelNets;
+    private final List<Via> vias;
+    private final Map<ActionTile, Via> viaOf;
+
+    Netlist() {
+        nets = new ArrayList<>();
+        netOf = new IdentityHashMap<>();
+        gateNets = new LinkedHashMap<>();
+        channelNets = new LinkedHashMap<>();
+        vias = new ArrayList<>();
+        viaOf = new IdentityHashMap<>();
+    }
+
+    void addNet(Net net) {
+        nets.add(net);
+        for (ConductorTile t : net.getTiles()) {
+            netOf.put(t, net);
+        }
+    }
+
+    void addTransistor(Transistor transistor, List<Net> gates, List<Net> channels) {
+        gateNets.put(transistor, Collections.unmodifiableList(gates));
+        channelNets.put(transistor, Collections.unmodifiableList(channels));
+    }
+
+    void addVia(Via via) {
+        vias.add(via);
+        viaOf.put(via.getTile(), via);
+        viaOf.put(via.getConnectedTo(), via);
+    }
+
+    boolean isVia(ActionTile tile) {
+        return viaOf.containsKey(tile);
+    }
+
+    /**
+     * @return Unmodifiable list of all the nets.
+     */
+    public List<Net> getNets() {
+        return Collections.unmodifiableList(nets);
+    }
+
+    /**
+     * @param tile Tile to search for.
+     * @return Net the tile is part of, or null if the tile is not part of any net (for example transistors).
+     */
+    public Net getNet(Tile tile) {
+        return tile instanceof ConductorTile ? netOf.get(tile) : null;
+    }
+
+    /**
+     * @return All the transistors (including logic gates) connected to any net.
+     */
+    public List<Transistor> getTransistors() {
+        return new ArrayList<>(gateNets.keySet());
+    }
+
+    /**
+     * @param transistor Transistor to search for.
+     * @return Nets that make the transistor conductive when powered (N-type silicon nets in contact with it).
+     */
+    public List<Net> getGateNets(Transistor transistor) {
+        return gateNets.getOrDefault(transistor, Collections.emptyList());
+    }
+
+    /**
+     * @param transistor Transistor to search for.
+     * @return Nets that the transistor conducts power from or to (every other net in contact with it).
+     */
+    public List<Net> getChannelNets(Transistor transistor) {
+        return channelNets.getOrDefault(transistor, Collections.emptyList());
+    }
+
+    /**
+     * @return Unmodifiable list of all the vias.
+     */
+    public List<Via> getVias() {
+        return Collections.unmodifiableList(vias);
+    }
+
+    /**
+     * Connection between two tiles in different layers.
+     */
+    public static class Via {
+        private final ConductorTile tile;
+        private final ActionTile connectedTo;
+        private final Net net;
+        private final Net connectedNet;
+
+        Via(ConductorTile tile, ActionTile connectedTo, Net net, Net connectedNet) {
+            this.tile = tile;
+            this.connectedTo = connectedTo;
+            this.net = net;
+            this.connectedNet = connectedNet;
+        }
+
+        public ConductorTile getTile() {
+            return tile;
+        }
+
+        public ActionTile getConnectedTo() {
+            return connectedTo;
+        }
+
+        /**
+         * @return Net of {@link #getTile()}, or null if it is not part of any net.
+         */
+        public Net getNet() {
+            return net;
+        }
+
+        /**
+         * @return Net of {@link #getConnectedTo()}, or null if it is not part of any net.
+         */
+        public Net getConnectedNet() {
+            return connectedNet;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.prinjsystems.asctlib.delta;
+
+import com.prinjsystems.asctlib.structures.Layer;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Constants and helpers shared by the writers and readers of tick delta streams.
+ * <p>
+ * A frame is made of:
+ * <ul>
+ * <li>A flags byte ({@link #KEYFRAME}) and the tick, as a varint.</li>
+ * <li>The tile types used for the first time (all of them in keyframes): their count, and for each one its id and
+ * class name.</li>
+ * <li>The number of layers, and for each one a bitmap of the chunks that changed. For each of those chunks, a
+ * bitmap of the cells that changed, and for each of those cells its type id (0 if it is empty) and, if it isn't
+ * empty, its quantized temperature and powered bit (see {@link #encodeState(int, boolean)}).</li>
+ * </ul>
+ * Bitmaps are written as a mask of their 64 bit words that are not zero, followed by those words, all as varints, so
+ * a layer where nothing changed takes a single byte. In streams, each frame is preceded by its length.
+ */
+final class DeltaCodec {
+    static final int KEYFRAME = 1;
+    static final int CHUNKS = Layer.LAYER_SIZE / Layer.CHUNK_SIZE; // Chunks in each side of a layer
+    static final int CHUNK_CELLS = Layer.CHUNK_SIZE * Layer.CHUNK_SIZE;
+    /**
+     * Temperatures are sent in steps of 1 / TEMP_SCALE degrees.
+     */
+    static final float TEMP_SCALE = 2;
+
+    private DeltaCodec() {
+    }
+
+    static int quantize(float temp) {
+        return Math.round(temp * TEMP_SCALE);
+    }
+
+    static float dequantize(int temp) {
+        return temp / TEMP_SCALE;
+    }
+
+    /**
+     * @return Powered bit and temperature of a cell, as an unsigned number (so that small temperatures take few
+     * bytes as a varint).
+     */
+    static long encodeState(int temp, boolean powered) {
+        long zigzag = ((long) temp << 1) ^ (temp >> 31);
+        return zigzag << 1 | (powered ? 1 : 0);
+    }
+
+    static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    static int readVarInt(ByteBuffer in) {
+        return (int) readVarLong(in);
+    }
+
+    /**
+     * Reads a varint from a stream.
+     *
+     * @return The value, or -1 if the stream ended before it started.
+     */
+    static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                if (shift == 0) {
+                    return -1;
+                }
+                throw new EOFException("Stream ended in the middle of a frame length!");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Writes the bits of a bitmap.
+     *
+     * @param words Words of the bitmap, at most 64.
+     */
+    static void writeBitmap(ByteArrayOutputStream out, long[] words) {
+        long mask = 0;
+        for (int i = 0; i < words.length; i++) {
+            if (words[i] != 0) {
+                mask |= 1L << i;
+            }
+        }
+        writeVarLong(out, mask);
+        for (long word : words) {
+            if (word != 0) {
+                writeVarLong(out, word);
+            }
+        }
+    }
+
+    static long[] readBitmap(ByteBuffer in, int words) {
+        long[] result = new long[words];
+        long mask = readVarLong(in);
+        for (int i = 0; i < words; i++) {
+            if ((mask & (1L << i)) != 0) {
+                result[i] = readVarLong(in);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the header of a frame.
+     */
+    static DeltaFrame toFrame(byte[] data) throws IOException {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(data);
+            int flags = in.get();
+            return new DeltaFrame(readVarLong(in), (flags & KEYFRAME) != 0, data);
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid frame header!", e);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.prinjsystems.asctlib.delta;
+
+/**
+ * One frame of a tick delta stream: the changes of a single tick, already encoded. Frames are written by a {@link
+ * DeltaRecorder} and applied by a {@link DeltaPlayer}.
+ */
+public final class DeltaFrame {
+    private final long tick;
+    private final boolean keyframe;
+    private final byte[] data;
+
+    /**
+     * @param tick     Tick of the frame.
+     * @param keyframe If the frame contains the whole map, instead of only what changed.
+     * @param data     Encoded frame, including its header.
+     */
+    public DeltaFrame(long tick, boolean keyframe, byte[] data) {
+        this.tick = tick;
+        this.keyframe = keyframe;
+        this.data = data;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * @return If this frame contains the whole map. Playback can start from any keyframe.
+     */
+    public boolean isKeyframe() {
+        return keyframe;
+    }
+
+    /**
+     * @return Encoded frame. Should not be modified.
+     */
+    public byte[] getData() {
+        return data;
+    }
+}
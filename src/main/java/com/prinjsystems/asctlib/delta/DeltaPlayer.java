@@ -0,0 +1,208 @@
+package com.prinjsystems.asctlib.delta;
+
+import com.prinjsystems.asctlib.structures.ActionTile;
+import com.prinjsystems.asctlib.structures.GameMap;
+import com.prinjsystems.asctlib.structures.Layer;
+import com.prinjsystems.asctlib.structures.Tile;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.prinjsystems.asctlib.delta.DeltaCodec.CHUNKS;
+import static com.prinjsystems.asctlib.delta.DeltaCodec.CHUNK_CELLS;
+import static com.prinjsystems.asctlib.structures.Layer.CHUNK_SIZE;
+
+/**
+ * Rebuilds a map from the frames written by a {@link DeltaRecorder}, for spectators or to replay a recording. The
+ * rebuilt map can be rendered like any other, but it is not meant to be ticked.
+ * <p>
+ * Tiles are created with a constructor that receives only their position (like {@code NSilicon(int, int)}), so all
+ * the tile types in the stream need to have one. Pixels are shown with the state recorded for each of them, so the
+ * layers of the rebuilt map are in wavefront mode.
+ */
+public class DeltaPlayer {
+    private final GameMap map;
+    private final Map<Integer, Constructor<? extends Tile>> types;
+    private final ClassLoader classLoader;
+    private long tick = -1;
+
+    /**
+     * Will create a player that loads the tile types with the context class loader of the current thread.
+     */
+    public DeltaPlayer() {
+        this(Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * @param classLoader Class loader to load the tile types with, for example the one mods were loaded from.
+     */
+    public DeltaPlayer(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+        map = new GameMap(new ArrayList<>());
+        types = new HashMap<>();
+    }
+
+    /**
+     * @return The rebuilt map. Its layers are replaced when a keyframe is applied.
+     */
+    public GameMap getMap() {
+        return map;
+    }
+
+    /**
+     * @return Tick of the last applied frame, or -1 if no frame was applied yet.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Applies the changes of a frame to the map. Frames need to be applied in order, starting from a keyframe.
+     *
+     * @param frame Frame to apply.
+     * @throws IOException If the frame is invalid, or uses a tile type that can't be created.
+     */
+    public void apply(DeltaFrame frame) throws IOException {
+        if (!frame.isKeyframe() && (tick < 0 || frame.getTick() != tick + 1)) {
+            throw new IOException("Frame of tick " + frame.getTick() + " can't be applied after tick " + tick
+                    + ", playback needs to start from a keyframe!");
+        }
+        try {
+            read(ByteBuffer.wrap(frame.getData()), frame.isKeyframe());
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid frame for tick " + frame.getTick() + "!", e);
+        }
+        tick = frame.getTick();
+    }
+
+    /**
+     * Applies frames from a source until a tick is reached. Frames before the first keyframe are skipped, so this
+     * can be used to start watching a live stream at any moment.
+     * <p>
+     * If the source is seekable, playback jumps to the last keyframe before the tick when the tick is behind the
+     * current one, or when that keyframe is ahead of the current tick. Otherwise, it just goes on from the current
+     * tick, so the tick can't be behind it.
+     *
+     * @param source Source to read the frames from.
+     * @param tick   Tick to stop at.
+     * @return If the tick was reached, false if the source ended before that or the tick was already behind.
+     * @throws IOException If the frames couldn't be read or applied.
+     */
+    public boolean seek(DeltaSource source, long tick) throws IOException {
+        long skipUntil = -1;
+        if (source instanceof SeekableDeltaSource) {
+            long keyframe = ((SeekableDeltaSource) source).seekKeyframe(tick);
+            if (keyframe >= 0 && keyframe <= this.tick && this.tick <= tick) {
+                skipUntil = this.tick; // Going on from here is faster than going back to the keyframe
+            } else if (keyframe >= 0) {
+                this.tick = -1;
+            }
+        }
+        while (this.tick < tick) {
+            DeltaFrame frame = source.read();
+            if (frame == null) {
+                return false;
+            }
+            if (frame.getTick() > skipUntil && (frame.isKeyframe() || this.tick >= 0)) {
+                apply(frame);
+            }
+        }
+        return this.tick == tick;
+    }
+
+    private void read(ByteBuffer in, boolean keyframe) throws IOException {
+        in.get(); // Flags
+        DeltaCodec.readVarLong(in); // Tick
+        int typeCount = DeltaCodec.readVarInt(in);
+        for (int i = 0; i < typeCount; i++) {
+            int id = DeltaCodec.readVarInt(in);
+            byte[] name = new byte[DeltaCodec.readVarInt(in)];
+            in.get(name);
+            if (!types.containsKey(id)) {
+                types.put(id, findConstructor(new String(name, StandardCharsets.UTF_8)));
+            }
+        }
+
+        int layerCount = DeltaCodec.readVarInt(in);
+        List<Layer> layers = map.getLayers();
+        if (keyframe) {
+            layers.clear();
+            for (int i = 0; i < layerCount; i++) {
+                Layer layer = new Layer();
+                layer.setPixelWavefront(true);
+                layers.add(layer);
+            }
+        } else if (layerCount != layers.size()) {
+            throw new IOException("Frame has " + layerCount + " layers, but the map has " + layers.size() + "!");
+        }
+        for (Layer layer : layers) {
+            readLayer(in, layer);
+        }
+    }
+
+    private void readLayer(ByteBuffer in, Layer layer) throws IOException {
+        long[] changedChunks = DeltaCodec.readBitmap(in, CHUNKS * CHUNKS / 64);
+        for (int c = 0; c < CHUNKS * CHUNKS; c++) {
+            if ((changedChunks[c / 64] & 1L << (c % 64)) == 0) {
+                continue;
+            }
+            int startX = c % CHUNKS * CHUNK_SIZE;
+            int startY = c / CHUNKS * CHUNK_SIZE;
+            long[] changedCells = DeltaCodec.readBitmap(in, CHUNK_CELLS / 64);
+            for (int i = 0; i < CHUNK_CELLS; i++) {
+                if ((changedCells[i / 64] & 1L << (i % 64)) != 0) {
+                    readCell(in, layer, startX + i % CHUNK_SIZE, startY + i / CHUNK_SIZE);
+                }
+            }
+        }
+    }
+
+    private void readCell(ByteBuffer in, Layer layer, int x, int y) throws IOException {
+        int id = DeltaCodec.readVarInt(in);
+        if (id == 0) {
+            layer.removeTile(x, y);
+            return;
+        }
+        long state = DeltaCodec.readVarLong(in);
+        boolean powered = (state & 1) != 0;
+        long zigzag = state >>> 1;
+        int temp = (int) ((zigzag >>> 1) ^ -(zigzag & 1));
+
+        Constructor<? extends Tile> constructor = types.get(id);
+        if (constructor == null) {
+            throw new IOException("Unknown tile type " + id + "!");
+        }
+        Tile tile = layer.getTile(x, y);
+        if (tile == null || tile.getClass() != constructor.getDeclaringClass()) {
+            try {
+                tile = constructor.newInstance(x, y);
+            } catch (ReflectiveOperationException e) {
+                throw new IOException("Could not create tile '" + constructor.getDeclaringClass().getName() + "'!", e);
+            }
+            layer.addTile(tile);
+        }
+        tile.setTemp(DeltaCodec.dequantize(temp));
+        if (tile instanceof ActionTile) {
+            ((ActionTile) tile).restorePowered(powered);
+        }
+    }
+
+    private Constructor<? extends Tile> findConstructor(String name) throws IOException {
+        try {
+            Class<? extends Tile> type = Class.forName(name, false, classLoader).asSubclass(Tile.class);
+            Constructor<? extends Tile> constructor = type.getDeclaredConstructor(int.class, int.class);
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Unknown tile type '" + name + "'!", e);
+        } catch (NoSuchMethodException e) {
+            throw new IOException("Tile type '" + name + "' needs a constructor with only its position to be "
+                    + "replayed!", e);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.prinjsystems.asctlib.delta;
+
+import com.prinjsystems.asctlib.circuits.Net;
+import com.prinjsystems.asctlib.structures.ActionTile;
+import com.prinjsystems.asctlib.structures.GameMap;
+import com.prinjsystems.asctlib.structures.Layer;
+import com.prinjsystems.asctlib.structures.LayerListener;
+import com.prinjsystems.asctlib.structures.Tile;
+import com.prinjsystems.asctlib.structures.conductors.ConductorTile;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.prinjsystems.asctlib.delta.DeltaCodec.CHUNKS;
+import static com.prinjsystems.asctlib.delta.DeltaCodec.CHUNK_CELLS;
+import static com.prinjsystems.asctlib.structures.Layer.CHUNK_SIZE;
+
+/**
+ * Records what changes in a map each tick as a compact stream of frames, that can be sent to spectators or saved to
+ * be replayed later by a {@link DeltaPlayer}, without simulating the map again.
+ * <p>
+ * For each cell, the stream has the type of its tile, if it is shown as powered (which includes the tiles of a
+ * compiled net that power is going through, see {@link Net#isLit()}) and its temperature (rounded to half a
+ * degree), so it has everything needed to show the map, but not to simulate it (connections between layers and the
+ * internal state of the tiles are not recorded). Only cells where one of those changed are written, and only the
+ * chunks where the state of a tile changed (see {@link LayerListener#statesChanged(Layer, BitSet)}), or that had their
+ * tiles edited or repainted, are checked, so both the size of the stream and the time spent recording depend on how
+ * much changes, not on the size of the map or how much of it is awake.
+ * <p>
+ * Every once in a while (see {@link #setKeyframeInterval(int)}) a keyframe with the whole map is written, so
+ * playback can start from the middle of the stream. Keyframes are also written when layers are added or removed.
+ */
+public class DeltaRecorder implements LayerListener {
+    private final GameMap map;
+    private final DeltaSink sink;
+    private final Map<Class<?>, Integer> typeIds;
+    private final List<Class<?>> newTypes;
+    private final List<LayerShadow> shadows;
+    private long tick;
+    private int keyframeInterval = 600;
+    private long lastKeyframe;
+    private boolean keyframeRequested = true;
+
+    /**
+     * @param map  Map to record. Should already be in the state the recording starts from.
+     * @param sink Where to write the frames.
+     */
+    public DeltaRecorder(GameMap map, DeltaSink sink) {
+        this.map = map;
+        this.sink = sink;
+        typeIds = new HashMap<>();
+        newTypes = new ArrayList<>();
+        shadows = new ArrayList<>();
+    }
+
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+     * @param keyframeInterval Number of ticks between keyframes. Smaller intervals make seeking faster, and the
+     *                         stream larger.
+     */
+    public void setKeyframeInterval(int keyframeInterval) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("Keyframe interval needs to be at least 1!");
+        }
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * Makes the next frame a keyframe, for example so that a spectator that just joined can start watching.
+     */
+    public void requestKeyframe() {
+        keyframeRequested = true;
+    }
+
+    /**
+     * @return Tick of the last recorded frame. The first frame is tick 1.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Writes the frame of the tick that just happened. Should be called after each {@link GameMap#tick()}, from the
+     * thread that ticks the map.
+     *
+     * @throws IOException If the sink couldn't write the frame.
+     */
+    public void record() throws IOException {
+        tick++;
+        boolean keyframe = keyframeRequested || tick - lastKeyframe >= keyframeInterval || layersChanged();
+        if (keyframe) {
+            resetShadows();
+            lastKeyframe = tick;
+            keyframeRequested = false;
+        }
+
+        ByteArrayOutputStream layersOut = new ByteArrayOutputStream();
+        DeltaCodec.writeVarLong(layersOut, shadows.size());
+        for (LayerShadow shadow : shadows) {
+            shadow.write(layersOut, keyframe);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(layersOut.size() + 16);
+        out.write(keyframe ? DeltaCodec.KEYFRAME : 0);
+        DeltaCodec.writeVarLong(out, tick);
+        List<Class<?>> types = keyframe ? typeList() : newTypes;
+        DeltaCodec.writeVarLong(out, types.size());
+        for (Class<?> type : types) {
+            byte[] name = type.getName().getBytes(StandardCharsets.UTF_8);
+            DeltaCodec.writeVarLong(out, typeIds.get(type));
+            DeltaCodec.writeVarLong(out, name.length);
+            out.write(name, 0, name.length);
+        }
+        newTypes.clear();
+        layersOut.writeTo(out);
+        sink.write(new DeltaFrame(tick, keyframe, out.toByteArray()));
+    }
+
+    /**
+     * Stops listening to the layers of the map, and closes the sink.
+     *
+     * @throws IOException If the sink couldn't be closed.
+     */
+    public void close() throws IOException {
+        for (LayerShadow shadow : shadows) {
+            shadow.layer.removeListener(this);
+        }
+        shadows.clear();
+        sink.close();
+    }
+
+    @Override
+    public void tilesChanged(Layer layer, int x, int y, int width, int height) {
+        markDirty(layer, x, y, width, height);
+    }
+
+    @Override
+    public void tilesRepainted(Layer layer, int x, int y, int width, int height) {
+        markDirty(layer, x, y, width, height);
+    }
+
+    @Override
+    public void statesChanged(Layer layer, BitSet chunks) {
+        LayerShadow shadow = shadowOf(layer);
+        if (shadow != null) {
+            shadow.dirty.or(chunks);
+        }
+    }
+
+    private void markDirty(Layer layer, int x, int y, int width, int height) {
+        LayerShadow shadow = shadowOf(layer);
+        if (shadow != null) {
+            shadow.markDirty(x, y, width, height);
+        }
+    }
+
+    private LayerShadow shadowOf(Layer layer) {
+        for (LayerShadow shadow : shadows) {
+            if (shadow.layer == layer) {
+                return shadow;
+            }
+        }
+        return null;
+    }
+
+    private boolean layersChanged() {
+        List<Layer> layers = map.getLayers();
+        if (layers.size() != shadows.size()) {
+            return true;
+        }
+        for (int i = 0; i < layers.size(); i++) {
+            if (layers.get(i) != shadows.get(i).layer) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void resetShadows() {
+        for (LayerShadow shadow : shadows) {
+            shadow.layer.removeListener(this);
+        }
+        shadows.clear();
+        for (Layer layer : map.getLayers()) {
+            shadows.add(new LayerShadow(layer));
+            layer.addListener(this);
+        }
+    }
+
+    private List<Class<?>> typeList() {
+        List<Class<?>> result = new ArrayList<>(typeIds.size());
+        for (int i = 0; i < typeIds.size(); i++) {
+            result.add(null);
+        }
+        typeIds.forEach((type, id) -> result.set(id - 1, type));
+        return result;
+    }
+
+    /**
+     * @return State of a tile, as last sent: its type id, powered bit and quantized temperature. 0 if there is no
+     * tile.
+     */
+    private long stateOf(Tile tile) {
+        if (tile == null) {
+            return 0;
+        }
+        Integer id = typeIds.get(tile.getClass());
+        if (id == null) {
+            id = typeIds.size() + 1; // 0 is used for empty cells
+            typeIds.put(tile.getClass(), id);
+            newTypes.add(tile.getClass());
+        }
+        boolean powered = tile instanceof ActionTile && ((ActionTile) tile).isPowered();
+        if (!powered && tile instanceof ConductorTile) {
+            Net net = ((ConductorTile) tile).getNet();
+            powered = net != null && net.isLit(); // Shown as powered, even if the tile itself isn't
+        }
+        return (long) id << 33 | (powered ? 1L << 32 : 0) | (DeltaCodec.quantize(tile.getTemp()) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * What the spectators currently know about a layer.
+     */
+    private class LayerShadow {
+        private final Layer layer;
+        private final long[][] chunks; // State of each cell of each chunk, null for chunks that were always empty
+        private final BitSet dirty;
+        private final long[] states; // Current state of each cell of the chunk being written
+
+        LayerShadow(Layer layer) {
+            this.layer = layer;
+            chunks = new long[CHUNKS * CHUNKS][];
+            dirty = new BitSet(CHUNKS * CHUNKS);
+            states = new long[CHUNK_CELLS];
+        }
+
+        void markDirty(int x, int y, int width, int height) {
+            int minX = Math.max(0, x) / CHUNK_SIZE;
+            int minY = Math.max(0, y) / CHUNK_SIZE;
+            int maxX = (Math.min(Layer.LAYER_SIZE, x + width) - 1) / CHUNK_SIZE;
+            int maxY = (Math.min(Layer.LAYER_SIZE, y + height) - 1) / CHUNK_SIZE;
+            for (int chunkY = minY; chunkY <= maxY; chunkY++) {
+                dirty.set(minX + chunkY * CHUNKS, maxX + chunkY * CHUNKS + 1);
+            }
+        }
+
+        void write(ByteArrayOutputStream out, boolean keyframe) {
+            long[] changedChunks = new long[CHUNKS * CHUNKS / 64];
+            ByteArrayOutputStream chunksOut = new ByteArrayOutputStream();
+            for (int c = keyframe ? 0 : dirty.nextSetBit(0); c >= 0 && c < CHUNKS * CHUNKS;
+                 c = keyframe ? c + 1 : dirty.nextSetBit(c + 1)) {
+                int chunkX = c % CHUNKS;
+                int chunkY = c / CHUNKS;
+                if (writeChunk(chunksOut, c, chunkX * CHUNK_SIZE, chunkY * CHUNK_SIZE)) {
+                    changedChunks[c / 64] |= 1L << (c % 64);
+                }
+            }
+            dirty.clear();
+            DeltaCodec.writeBitmap(out, changedChunks);
+            out.writeBytes(chunksOut.toByteArray());
+        }
+
+        /**
+         * Writes the cells of a chunk that changed since they were last sent. The tiles are peeked at, so chunks that
+         * are asleep or stored off heap, and compressed layers, are left as they are.
+         *
+         * @return If anything changed.
+         */
+        private boolean writeChunk(ByteArrayOutputStream out, int c, int startX, int startY) {
+            Arrays.fill(states, 0);
+            layer.peekChunk(startX, startY, (tile, i) -> states[i] = stateOf(tile));
+            long[] changedCells = null;
+            ByteArrayOutputStream cellsOut = null;
+            for (int i = 0; i < CHUNK_CELLS; i++) {
+                long state = states[i];
+                long old = chunks[c] == null ? 0 : chunks[c][i];
+                if (state == old) {
+                    continue;
+                }
+                if (chunks[c] == null) {
+                    chunks[c] = new long[CHUNK_CELLS];
+                }
+                chunks[c][i] = state;
+                if (changedCells == null) {
+                    changedCells = new long[CHUNK_CELLS / 64];
+                    cellsOut = new ByteArrayOutputStream();
+                }
+                changedCells[i / 64] |= 1L << (i % 64);
+                DeltaCodec.writeVarLong(cellsOut, state >>> 33);
+                if (state != 0) {
+                    DeltaCodec.writeVarLong(cellsOut, DeltaCodec.encodeState((int) state, (state & 1L << 32) != 0));
+                }
+            }
+            if (changedCells == null) {
+                return false;
+            }
+            DeltaCodec.writeBitmap(out, changedCells);
+            out.writeBytes(cellsOut.toByteArray());
+            return true;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.prinjsystems.asctlib.delta;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where a {@link DeltaRecorder} sends its frames, like a file, a socket or a list of spectators.
+ */
+public interface DeltaSink extends Closeable {
+    /**
+     * @param frame Frame of the last tick.
+     * @throws IOException If the frame couldn't be written.
+     */
+    void write(DeltaFrame frame) throws IOException;
+}
@@ -0,0 +1,15 @@
+package com.prinjsystems.asctlib.delta;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where a {@link DeltaPlayer} reads frames from.
+ */
+public interface DeltaSource extends Closeable {
+    /**
+     * @return Next frame, or null if there are no more frames.
+     * @throws IOException If the frame couldn't be read.
+     */
+    DeltaFrame read() throws IOException;
+}
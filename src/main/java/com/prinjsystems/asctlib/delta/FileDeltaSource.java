@@ -0,0 +1,82 @@
+package com.prinjsystems.asctlib.delta;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads frames from a file written by a {@link StreamDeltaSink}, and can seek to any of its keyframes. The keyframes
+ * are found the first time a seek is done, by skipping from frame to frame, and again for the part of the file that
+ * was written after that if the file is still being recorded.
+ */
+public class FileDeltaSource implements SeekableDeltaSource {
+    private final RandomAccessFile file;
+    private final InputStream in; // Reads single bytes from the file, for frame lengths
+    private final List<long[]> keyframes; // Tick and position of each keyframe
+    private long indexedTo; // Position up to where the keyframes were found
+
+    public FileDeltaSource(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        in = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return FileDeltaSource.this.file.read();
+            }
+        };
+        keyframes = new ArrayList<>();
+    }
+
+    @Override
+    public DeltaFrame read() throws IOException {
+        long start = file.getFilePointer();
+        long length = DeltaCodec.readVarLong(in);
+        if (length < 0 || file.getFilePointer() + length > file.length()) {
+            file.seek(start); // Not written yet, if the file is still being recorded
+            return null;
+        }
+        byte[] data = new byte[(int) length];
+        file.readFully(data);
+        return DeltaCodec.toFrame(data);
+    }
+
+    @Override
+    public long seekKeyframe(long tick) throws IOException {
+        long position = file.getFilePointer();
+        file.seek(indexedTo);
+        while (true) {
+            long start = file.getFilePointer();
+            long length = DeltaCodec.readVarLong(in);
+            if (length < 0 || file.getFilePointer() + length > file.length()) {
+                break;
+            }
+            long bodyStart = file.getFilePointer();
+            // The header is at most 11 bytes (flags and tick), so this doesn't need to read the whole frame
+            byte[] header = new byte[(int) Math.min(length, 11)];
+            file.readFully(header);
+            DeltaFrame frame = DeltaCodec.toFrame(header);
+            if (frame.isKeyframe()) {
+                keyframes.add(new long[]{frame.getTick(), start});
+            }
+            file.seek(bodyStart + length);
+            indexedTo = file.getFilePointer();
+        }
+
+        long[] found = null;
+        for (long[] keyframe : keyframes) {
+            if (keyframe[0] > tick) {
+                break;
+            }
+            found = keyframe;
+        }
+        file.seek(found != null ? found[1] : position);
+        return found != null ? found[0] : -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
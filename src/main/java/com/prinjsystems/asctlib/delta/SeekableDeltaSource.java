@@ -0,0 +1,18 @@
+package com.prinjsystems.asctlib.delta;
+
+import java.io.IOException;
+
+/**
+ * A {@link DeltaSource} that can jump to any keyframe, like a recorded file.
+ */
+public interface SeekableDeltaSource extends DeltaSource {
+    /**
+     * Moves to the last keyframe at or before a tick, so that it is the next frame to be read.
+     *
+     * @param tick Tick to seek to.
+     * @return Tick of the keyframe, or -1 if there is no keyframe at or before that tick (in which case nothing
+     * changes).
+     * @throws IOException If the source couldn't be read.
+     */
+    long seekKeyframe(long tick) throws IOException;
+}
@@ -0,0 +1,39 @@
+package com.prinjsystems.asctlib.delta;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes frames to a stream, each one preceded by its length. Can be used with files, sockets or pipes, and read
+ * back with a {@link StreamDeltaSource}, or a {@link FileDeltaSource} for files.
+ */
+public class StreamDeltaSink implements DeltaSink {
+    private final OutputStream out;
+    private final boolean flush;
+
+    /**
+     * @param out   Stream to write to. Should be buffered, since frames are written in small pieces.
+     * @param flush If the stream should be flushed after each frame, for live streams.
+     */
+    public StreamDeltaSink(OutputStream out, boolean flush) {
+        this.out = out;
+        this.flush = flush;
+    }
+
+    @Override
+    public void write(DeltaFrame frame) throws IOException {
+        ByteArrayOutputStream length = new ByteArrayOutputStream(5);
+        DeltaCodec.writeVarLong(length, frame.getData().length);
+        length.writeTo(out);
+        out.write(frame.getData());
+        if (flush) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,32 @@
+package com.prinjsystems.asctlib.delta;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads frames written by a {@link StreamDeltaSink}.
+ */
+public class StreamDeltaSource implements DeltaSource {
+    private final DataInputStream in;
+
+    public StreamDeltaSource(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    @Override
+    public DeltaFrame read() throws IOException {
+        long length = DeltaCodec.readVarLong(in);
+        if (length < 0) {
+            return null;
+        }
+        byte[] data = new byte[(int) length];
+        in.readFully(data);
+        return DeltaCodec.toFrame(data);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,200 @@
+package com.prinjsystems.asctlib.host;
+
+import com.prinjsystems.asctlib.structures.GameMap;
+
+/**
+ * A map running in a {@link SimulationHost}. Used to change its tick rate, and to see how well it is keeping up with
+ * it. All methods can be called from any thread.
+ */
+public class HostedMap {
+    private static final int PARKED = 0; // Not in the queue, nor running
+    private static final int QUEUED = 1; // Waiting for its next tick in the queue of the host
+    private static final int RUNNING = 2; // Being ticked by a thread of the host
+
+    private final SimulationHost host;
+    private final GameMap map;
+    private int state = PARKED;
+    private boolean removed;
+    private double ticksPerSecond;
+    private long period; // Nanoseconds between ticks, 0 while paused
+    volatile long nextTickAt; // In System#nanoTime(), only changes while the map is not queued
+    long virtualTime; // Moves forward by the period at each tick, see SimulationHost
+    private volatile long ticks;
+    private volatile long droppedTicks;
+    private volatile long averageTickTime = -1;
+    private volatile Throwable failure;
+
+    HostedMap(SimulationHost host, GameMap map) {
+        this.host = host;
+        this.map = map;
+    }
+
+    public GameMap getMap() {
+        return map;
+    }
+
+    public synchronized double getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    /**
+     * Changes the tick rate target of this map. A rate of 0 pauses the map: it is parked, and doesn't cost anything
+     * until it is resumed. When a paused map is resumed, its first tick happens right away, and it is not behind
+     * schedule for the time it was paused.
+     *
+     * @param ticksPerSecond Tick rate target, or 0 to pause the map.
+     */
+    public synchronized void setTicksPerSecond(double ticksPerSecond) {
+        if (!(ticksPerSecond >= 0) || Double.isInfinite(ticksPerSecond)) {
+            throw new IllegalArgumentException("Tick rate must be a positive number, or 0!");
+        }
+        long oldPeriod = period;
+        this.ticksPerSecond = ticksPerSecond;
+        period = ticksPerSecond > 0 ? Math.max(1, (long) (1e9 / ticksPerSecond)) : 0;
+        if (state == QUEUED && host.unqueue(this)) {
+            // The next tick is moved as if the old one was done at the new rate
+            long now = System.nanoTime();
+            nextTickAt = Math.min(nextTickAt, Math.max(now, nextTickAt - oldPeriod + period));
+            state = PARKED;
+            schedule();
+        } else if (state == PARKED) {
+            nextTickAt = System.nanoTime();
+            schedule();
+        }
+        // Otherwise it is running (or just about to), and the new rate is used once it is done
+    }
+
+    /**
+     * @return If this map is paused, was removed, or stopped because of a failure.
+     */
+    public synchronized boolean isParked() {
+        return state == PARKED;
+    }
+
+    /**
+     * @return How many ticks this map ran in the host.
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * @return How many ticks this map should have run by now, but didn't yet. Only goes above the max lag of the host
+     * (see {@link SimulationHost#setMaxLag(long)}) while the map waits for a thread, since older ticks are dropped
+     * once it runs. Always 0 while the map is parked.
+     */
+    public synchronized long getLag() {
+        if (state == PARKED || period == 0) {
+            return 0;
+        }
+        long late = System.nanoTime() - nextTickAt;
+        return late < 0 ? 0 : late / period + 1;
+    }
+
+    /**
+     * @return How many ticks this map skipped because it was too far behind schedule.
+     */
+    public long getDroppedTicks() {
+        return droppedTicks;
+    }
+
+    /**
+     * @return Average time a tick of this map takes, in nanoseconds, weighted towards the latest ticks. -1 if it
+     * didn't tick yet.
+     */
+    public long getAverageTickTime() {
+        return averageTickTime;
+    }
+
+    /**
+     * @return Exception or error thrown by a tick of this map, or null if there wasn't any. A map stops running once a
+     * tick fails, since its state may be broken, and it can't be resumed.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Removes this map from the host. If it is being ticked, the current tick finishes first, and no other tick
+     * happens after it.
+     */
+    public synchronized void remove() {
+        if (removed) {
+            return;
+        }
+        removed = true;
+        if (state == QUEUED && host.unqueue(this)) {
+            state = PARKED;
+        }
+        host.removed(this);
+    }
+
+    /**
+     * Called by a thread of the host after taking this map from the queue. Runs the ticks that are due, until the
+     * map is back on schedule or the time slice runs out, and puts the map back in the queue.
+     */
+    void run(long timeSlice, long maxLag) {
+        long period;
+        synchronized (this) {
+            if (removed || this.period == 0) {
+                state = PARKED; // Removed or paused while it was being taken from the queue
+                return;
+            }
+            state = RUNNING;
+            period = this.period;
+        }
+
+        long start = System.nanoTime();
+        long excess = start - nextTickAt - maxLag;
+        if (excess > 0) {
+            long dropped = (excess + period - 1) / period;
+            droppedTicks += dropped;
+            nextTickAt += dropped * period;
+        }
+        long now = start;
+        try {
+            do {
+                map.tick();
+                long end = System.nanoTime();
+                averageTickTime = averageTickTime < 0 ? end - now : (averageTickTime * 7 + end - now) / 8;
+                now = end;
+                ticks++;
+                nextTickAt += period;
+                virtualTime += period;
+            } while (nextTickAt - now <= 0 && now - start < timeSlice);
+        } catch (Throwable e) {
+            failure = e;
+        }
+
+        synchronized (this) {
+            state = PARKED;
+            if (this.period != period) {
+                nextTickAt += this.period - period; // The rate was changed while running
+            }
+            schedule();
+        }
+    }
+
+    /**
+     * Called by a thread of the host when {@link #run(long, long)} failed outside of a tick, so the map is not left
+     * running forever. The map stops like when a tick fails.
+     */
+    synchronized void failed(Throwable e) {
+        if (failure == null) {
+            failure = e;
+        }
+        if (state == RUNNING) {
+            state = PARKED;
+        }
+    }
+
+    /**
+     * Puts this map in the queue of the host, if it should run.
+     */
+    private void schedule() {
+        if (state == PARKED && period > 0 && !removed && failure == null && !host.isClosed()) {
+            state = QUEUED;
+            host.queue(this);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.prinjsystems.asctlib.host;
+
+import com.prinjsystems.asctlib.structures.GameMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs many {@link GameMap}s on a shared pool of threads, each one at its own tick rate.
+ * <p>
+ * Maps that are waiting for their next tick don't use any thread: they wait in a queue ordered by when their next
+ * tick is due, and the threads of the host take the maps that are due. A map runs ticks until it is back on schedule
+ * or its time slice (see {@link #setTimeSlice(long)}) runs out, and then goes back to the queue, so one slow map can't
+ * keep the others from ticking.
+ * <p>
+ * When there is not enough time for all the maps, the maps that are due take turns fairly: each map has a virtual
+ * clock that moves forward by the time between its ticks every time it ticks, and the map whose clock is the most
+ * behind goes first. That way every map gets the same share of its own rate, whatever its rate and however long its
+ * ticks take. Late ticks don't pile up either: a map is never more than some time behind schedule (see {@link
+ * #setMaxLag(long)}), older ticks are dropped instead, and counted (see {@link HostedMap#getDroppedTicks()}). Paused
+ * maps (with a rate of 0) are parked, and cost nothing until they are resumed.
+ * <p>
+ * A map is only ticked by one thread at a time, but may be ticked by a different thread each time. Edits should be
+ * sent to the maps with {@link GameMap#submit(java.util.function.Function)}, like with any other map that is ticked by
+ * another thread.
+ */
+public class SimulationHost implements AutoCloseable {
+    private final List<HostedMap> maps;
+    private final List<Thread> threads;
+    private final ReentrantLock lock;
+    private final Condition available;
+    private final PriorityQueue<HostedMap> waiting; // Maps that are not due yet, by when they are due
+    private final PriorityQueue<HostedMap> ready; // Maps that are due, by their virtual clocks
+    private volatile long timeSlice = 10_000_000;
+    private volatile long maxLag = 500_000_000;
+    private volatile boolean closed;
+
+    /**
+     * Creates a host with one thread per available processor.
+     */
+    public SimulationHost() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads Number of threads used to tick the maps.
+     */
+    public SimulationHost(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("A simulation host needs at least one thread!");
+        }
+        maps = new CopyOnWriteArrayList<>();
+        lock = new ReentrantLock();
+        available = lock.newCondition();
+        // Times from System#nanoTime() can overflow, so they are compared by their difference
+        waiting = new PriorityQueue<>((a, b) -> Long.signum(a.nextTickAt - b.nextTickAt));
+        ready = new PriorityQueue<>((a, b) -> Long.signum(a.virtualTime - b.virtualTime));
+        this.threads = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(this::work, "ASCT simulation host " + i);
+            t.setDaemon(true);
+            this.threads.add(t);
+            t.start();
+        }
+    }
+
+    /**
+     * Starts running a map. The first tick happens right away, unless the rate is 0.
+     *
+     * @param map            Map to run. Should not be ticked by anything else.
+     * @param ticksPerSecond Tick rate target of the map, or 0 to add it paused.
+     * @return Handle of the map in this host.
+     */
+    public HostedMap add(GameMap map, double ticksPerSecond) {
+        if (closed) {
+            throw new IllegalStateException("Simulation host is closed!");
+        }
+        HostedMap hosted = new HostedMap(this, map);
+        maps.add(hosted);
+        hosted.setTicksPerSecond(ticksPerSecond);
+        return hosted;
+    }
+
+    /**
+     * @return Unmodifiable list of the maps currently in this host, in the order they were added.
+     */
+    public List<HostedMap> getMaps() {
+        return List.copyOf(maps);
+    }
+
+    public long getTimeSlice() {
+        return timeSlice;
+    }
+
+    /**
+     * Sets for how long a map may run ticks before giving its thread to the other maps, when it is behind schedule.
+     * A map always runs at least one tick, even if that takes longer. 10 milliseconds by default.
+     *
+     * @param timeSlice Time slice, in nanoseconds.
+     */
+    public void setTimeSlice(long timeSlice) {
+        if (timeSlice <= 0) {
+            throw new IllegalArgumentException("Time slice must be positive!");
+        }
+        this.timeSlice = timeSlice;
+    }
+
+    public long getMaxLag() {
+        return maxLag;
+    }
+
+    /**
+     * Sets how far behind schedule a map can be before its older ticks start being dropped. Half a second by
+     * default.
+     *
+     * @param maxLag Maximum lag, in nanoseconds.
+     */
+    public void setMaxLag(long maxLag) {
+        if (maxLag < 0) {
+            throw new IllegalArgumentException("Max lag can't be negative!");
+        }
+        this.maxLag = maxLag;
+    }
+
+    /**
+     * Stops all the threads of this host, after they finish the ticks they are running. The maps are left in the
+     * state they were, and can be added to another host.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread t : threads) {
+            t.interrupt();
+        }
+        boolean interrupted = false;
+        for (Thread t : threads) {
+            while (t.isAlive() && t != Thread.currentThread()) {
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        lock.lock();
+        try {
+            waiting.clear();
+            ready.clear();
+        } finally {
+            lock.unlock();
+        }
+        maps.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Puts a map in the queue. Its next tick and virtual clock should not change until it is taken or unqueued.
+     */
+    void queue(HostedMap map) {
+        lock.lock();
+        try {
+            if (map.nextTickAt - System.nanoTime() <= 0) {
+                makeReady(map);
+            } else {
+                waiting.add(map);
+            }
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return If the map was in the queue and was removed from it. Otherwise a thread already took it.
+     */
+    boolean unqueue(HostedMap map) {
+        lock.lock();
+        try {
+            return waiting.remove(map) || ready.remove(map);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void removed(HostedMap map) {
+        maps.remove(map);
+    }
+
+    private void work() {
+        while (!closed) {
+            HostedMap map;
+            try {
+                map = take();
+            } catch (InterruptedException e) {
+                continue; // Only interrupted when closed
+            }
+            try {
+                map.run(timeSlice, maxLag);
+            } catch (Throwable e) {
+                map.failed(e); // Failed ticks are caught by the map itself, this keeps the thread alive for the rest
+            }
+        }
+    }
+
+    private HostedMap take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                while (!waiting.isEmpty() && waiting.peek().nextTickAt - now <= 0) {
+                    makeReady(waiting.poll());
+                }
+                HostedMap map = ready.poll();
+                if (map != null) {
+                    if (!ready.isEmpty()) {
+                        available.signal(); // Another thread can take the next one
+                    }
+                    return map;
+                }
+                if (waiting.isEmpty()) {
+                    available.await();
+                } else {
+                    available.awaitNanos(waiting.peek().nextTickAt - now);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves a map that is due to the ready queue. A map that was on schedule until now starts competing from where
+     * the most behind of the other maps is, so it doesn't get ahead of the maps that were already waiting, but it
+     * doesn't have to wait for them to catch up either.
+     */
+    private void makeReady(HostedMap map) {
+        long start = map.nextTickAt;
+        HostedMap first = ready.peek();
+        if (first != null && first.virtualTime - start < 0) {
+            start = first.virtualTime;
+        }
+        if (map.virtualTime - start < 0) {
+            map.virtualTime = start;
+        }
+        ready.add(map);
+    }
+}
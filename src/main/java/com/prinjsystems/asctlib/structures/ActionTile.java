@@ -2,6 +2,9 @@ package com.prinjsystems.asctlib.structures;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * An ActionTile is a tile that can react to events happening to it. For example a piece of wire. If another wire
@@ -17,9 +20,13 @@ public abstract class ActionTile extends Tile {
      */
     protected int unpoweredDelay = 4;
     /**
-     * Unpowered delay counter. When the tile is powered {@link #canReceivePower} is set to false this variable
-     * starts incrementing with each tick. When this counter reaches {@link #unpoweredDelay} it goes back to 0,
-     * {@link #canReceivePower} is set to true and the counter stops.
+     * Unpowered delay counter. When the tile is powered {@link #canReceivePower} is set to false and the counter
+     * starts running. When it reaches {@link #unpoweredDelay} it goes back to 0, {@link #canReceivePower} is set to
+     * true and the counter stops.
+     * <p>
+     * The tile doesn't actually count every tick, it instead schedules a timer in the {@link TimerWheel} of its layer
+     * that expires when the counter would reach the delay. This variable is only updated when the counter stops, so
+     * {@link #getUnpoweredFor()} should be used to get its current value.
      */
     protected int unpoweredFor = 0;
     /**
@@ -31,6 +38,7 @@ public abstract class ActionTile extends Tile {
      * Determines if the tile is currently powered.
      */
     protected boolean powered;
+    private transient TimerWheel.Timer recovery;
 
     protected ActionTile(int posX, int posY, Color color, String name, String shortenedName) {
         super(posX, posY, color, name, shortenedName);
@@ -42,6 +50,34 @@ public abstract class ActionTile extends Tile {
 
     protected void setPowered(boolean powered) {
         this.powered = powered;
+        wake();
+        stateChanged();
+    }
+
+    /**
+     * Sets the state of this tile directly, without it spreading anywhere. Meant for restoring a state that was saved
+     * or recorded somewhere else, like a {@link com.prinjsystems.asctlib.delta.DeltaPlayer} does. To power a tile as
+     * if it was powered by something, use {@link #trySetPowered(boolean, Tile)} instead.
+     *
+     * @param powered If the tile is powered.
+     */
+    public final void restorePowered(boolean powered) {
+        setPowered(powered);
+    }
+
+    /**
+     * @return If the tile will do something when it ticks. Only active tiles are ticked by their layer. By default,
+     * a tile is active while it is powered.
+     */
+    public boolean isActive() {
+        return isPowered();
+    }
+
+    /**
+     * @return If the tile can currently be powered, that is, if it is not recovering from being powered.
+     */
+    public boolean canReceivePower() {
+        return canReceivePower;
     }
 
     /**
@@ -52,10 +88,12 @@ public abstract class ActionTile extends Tile {
      * @param source  Source of the power. Some implementations may require a specific tile to be powered.
      */
     public void trySetPowered(boolean powered, Tile source) {
+        wake();
         if (canReceivePower) {
             this.powered = powered;
             canReceivePower = false;
             temp += 0.1f;
+            stateChanged();
         }
     }
 
@@ -75,15 +113,100 @@ public abstract class ActionTile extends Tile {
     @Override
     public void update() {
         super.update();
-        if (!canReceivePower) {
-            if (++unpoweredFor == unpoweredDelay) {
-                canReceivePower = true;
+        if (!canReceivePower && (recovery == null || recovery.getWheel() != from.getTimers())) {
+            scheduleRecovery();
+        }
+    }
+
+    /**
+     * An action tile is idle if it is not active, and it is not recovering from being powered (or its recovery
+     * is already scheduled in the timers of its layer).
+     */
+    @Override
+    public boolean isIdle() {
+        return super.isIdle() && !isActive()
+                && (canReceivePower || (recovery != null && recovery.getWheel() == from.getTimers()));
+    }
+
+    @Override
+    protected boolean hasHeapState() {
+        return super.hasHeapState() || (recovery != null && recovery.isScheduled());
+    }
+
+    @Override
+    protected void writeState(ByteBuffer out) {
+        super.writeState(out);
+        out.put((byte) ((powered ? 1 : 0) | (canReceivePower ? 2 : 0)));
+        out.putInt(unpoweredFor);
+    }
+
+    @Override
+    protected void readState(ByteBuffer in) {
+        super.readState(in);
+        byte flags = in.get();
+        powered = (flags & 1) != 0;
+        canReceivePower = (flags & 2) != 0;
+        unpoweredFor = in.getInt();
+    }
+
+    private void scheduleRecovery() {
+        if (recovery == null) {
+            recovery = new TimerWheel.Timer() {
+                @Override
+                protected void expire() {
+                    canReceivePower = true;
+                    unpoweredFor = 0;
+                }
+            };
+        } else if (recovery.isScheduled()) {
+            // The tile was moved from another layer, the counter continues from where it was there
+            unpoweredFor = getUnpoweredFor();
+            recovery.getWheel().cancel(recovery);
+        }
+        // This update counts as one, so the counter reaches the delay in this many ticks from the current one
+        TimerWheel timers = from.getTimers();
+        timers.schedule(recovery, timers.getTick() + unpoweredDelay - unpoweredFor - 1);
+    }
+
+    /**
+     * Makes the tile able to be powered again before the unpowered delay runs out. The unpowered delay counter stops
+     * where it is, and will continue from there the next time the tile is powered.
+     * <p>
+     * Should only be called while the tiles are being updated, or while the timers of the layer expire (that is right
+     * before the tiles are updated).
+     */
+    protected void allowPower() {
+        if (recovery != null && recovery.isScheduled()) {
+            TimerWheel wheel = recovery.getWheel();
+            unpoweredFor = recovery.getExpiresAt() <= wheel.getTick() ? 0 : getUnpoweredFor();
+            wheel.cancel(recovery);
+        } else if (!canReceivePower) {
+            // The tile was powered this tick, and its update (that would count one tick) didn't happen yet
+            if (++unpoweredFor >= unpoweredDelay) {
                 unpoweredFor = 0;
             }
         }
+        canReceivePower = true;
+    }
+
+    /**
+     * @return How many ticks the tile needs to recover after being powered, see {@link #unpoweredDelay}.
+     */
+    public int getUnpoweredDelay() {
+        return unpoweredDelay;
     }
 
     public int getUnpoweredFor() {
+        if (recovery != null && recovery.isScheduled()) {
+            return unpoweredDelay - (int) (recovery.getExpiresAt() - recovery.getWheel().getTick());
+        }
         return unpoweredFor;
     }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (recovery != null && recovery.isScheduled()) {
+            unpoweredFor = getUnpoweredFor(); // Timers are not saved, the counter continues from here when loaded
+        }
+        out.defaultWriteObject();
+    }
 }
@@ -0,0 +1,316 @@
+package com.prinjsystems.asctlib.structures;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+import static com.prinjsystems.asctlib.structures.Layer.LAYER_SIZE;
+
+/**
+ * The tiles of a layer that is not being used, in a compact form (see {@link Layer#compress()}).
+ * <p>
+ * Tiles that can be stored outside of the heap (see {@link OffHeapTile}) are turned into palette entries, that is,
+ * their type and state. Tiles with the same type and state (like all the untouched tiles of a wire) share the same
+ * entry. The cells of the layer are then stored row by row as runs of cells with the same entry, where empty cells
+ * are entry 0, so empty areas and long wires take a couple of bytes. Other tiles are kept as they are.
+ */
+final class CompressedLayer {
+    private final List<Constructor<? extends Tile>> types;
+    private final byte[] palette; // Type (as an index of types) and state of each palette entry
+    private final int[] paletteOffsets; // Where each entry starts in the palette, plus where the last one ends
+    private final byte[] runs; // Length and palette entry of each run, as varints
+    private final int[] heapCells;
+    private final Tile[] heapTiles;
+    private Tile[] entryTiles; // A tile of each palette entry, used to read the tiles without expanding the layer
+    private int[] rowRuns; // Where the run that has the first cell of each row starts in runs
+    private int[] rowRunCells; // First cell of that run
+
+    private CompressedLayer(List<Constructor<? extends Tile>> types, byte[] palette, int[] paletteOffsets,
+                            byte[] runs, int[] heapCells, Tile[] heapTiles) {
+        this.types = types;
+        this.palette = palette;
+        this.paletteOffsets = paletteOffsets;
+        this.runs = runs;
+        this.heapCells = heapCells;
+        this.heapTiles = heapTiles;
+    }
+
+    /**
+     * @param tiles    Tiles array of the layer.
+     * @param occupied Occupied cells of the layer.
+     * @return Compressed tiles.
+     */
+    static CompressedLayer compress(Tile[] tiles, BitSet occupied) {
+        Builder builder = new Builder();
+        int end = 0; // End of the last run
+        for (int i = occupied.nextSetBit(0); i >= 0; i = occupied.nextSetBit(i + 1)) {
+            builder.run(0, i - end);
+            builder.run(builder.entryOf(tiles[i], i), 1);
+            end = i + 1;
+        }
+        builder.run(0, tiles.length - end);
+        return builder.build();
+    }
+
+    /**
+     * Recreates the tiles of the layer.
+     *
+     * @param layer Layer the tiles belong to.
+     * @return Tiles array of the layer.
+     */
+    Tile[] expand(Layer layer) {
+        Tile[] tiles = new Tile[LAYER_SIZE * LAYER_SIZE];
+        ByteBuffer in = ByteBuffer.wrap(runs);
+        int i = 0;
+        while (in.hasRemaining()) {
+            int length = readVarInt(in);
+            int entry = readVarInt(in);
+            if (entry == 0) {
+                i += length;
+                continue;
+            }
+            int start = paletteOffsets[entry - 1];
+            ByteBuffer state = ByteBuffer.wrap(palette, start, paletteOffsets[entry] - start);
+            Constructor<? extends Tile> constructor = types.get(state.getShort());
+            state.mark();
+            for (int end = i + length; i < end; i++) {
+                Tile t;
+                try {
+                    t = constructor.newInstance(i % LAYER_SIZE, i / LAYER_SIZE);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("Could not recreate tile '"
+                            + constructor.getDeclaringClass().getName() + "'!", e);
+                }
+                state.reset();
+                t.readState(state);
+                t.from = layer;
+                tiles[i] = t;
+            }
+        }
+        for (int h = 0; h < heapCells.length; h++) {
+            tiles[heapCells[h]] = heapTiles[h];
+        }
+        return tiles;
+    }
+
+    /**
+     * Performs an action with each tile of a region, without expanding the layer: the tiles of each palette entry
+     * are read from a single tile that is moved from cell to cell, so the action should only read it, and not keep
+     * it.
+     *
+     * @param x      X position of the region.
+     * @param y      Y position of the region.
+     * @param width  Width of the region.
+     * @param height Height of the region.
+     * @param action Action to be performed with each tile, and its index in the tiles array.
+     */
+    void forEachIn(int x, int y, int width, int height, ObjIntConsumer<Tile> action) {
+        indexRows();
+        for (int row = y; row < y + height; row++) {
+            int start = x + row * LAYER_SIZE;
+            int end = start + width;
+            ByteBuffer in = ByteBuffer.wrap(runs);
+            in.position(rowRuns[row]);
+            for (int i = rowRunCells[row]; i < end; ) {
+                int length = readVarInt(in);
+                int entry = readVarInt(in);
+                if (entry != 0) {
+                    Tile t = entryTile(entry);
+                    for (int cell = Math.max(i, start); cell < Math.min(i + length, end); cell++) {
+                        t.posX = cell % LAYER_SIZE;
+                        t.posY = cell / LAYER_SIZE;
+                        action.accept(t, cell);
+                    }
+                }
+                i += length;
+            }
+            int h = Arrays.binarySearch(heapCells, start);
+            for (h = h < 0 ? -h - 1 : h; h < heapCells.length && heapCells[h] < end; h++) {
+                action.accept(heapTiles[h], heapCells[h]);
+            }
+        }
+    }
+
+    /**
+     * Reads a tile without expanding the layer, like {@link #forEachIn(int, int, int, int, ObjIntConsumer)} does.
+     *
+     * @param i Index of the tile in the tiles array.
+     * @return A tile with the type and state of the tile, that may be reused by the next call. Null if there is no
+     * tile there.
+     */
+    Tile peek(int i) {
+        Tile[] result = new Tile[1];
+        forEachIn(i % LAYER_SIZE, i / LAYER_SIZE, 1, 1, (t, cell) -> result[0] = t);
+        return result[0];
+    }
+
+    private Tile entryTile(int entry) {
+        if (entryTiles == null) {
+            entryTiles = new Tile[paletteOffsets.length];
+        }
+        if (entryTiles[entry] == null) {
+            int start = paletteOffsets[entry - 1];
+            ByteBuffer state = ByteBuffer.wrap(palette, start, paletteOffsets[entry] - start);
+            Constructor<? extends Tile> constructor = types.get(state.getShort());
+            try {
+                entryTiles[entry] = constructor.newInstance(0, 0);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not recreate tile '"
+                        + constructor.getDeclaringClass().getName() + "'!", e);
+            }
+            entryTiles[entry].readState(state);
+        }
+        return entryTiles[entry];
+    }
+
+    /**
+     * Finds where each row starts in the runs, the first time tiles are read without expanding the layer.
+     */
+    private void indexRows() {
+        if (rowRuns != null) {
+            return;
+        }
+        rowRuns = new int[LAYER_SIZE];
+        rowRunCells = new int[LAYER_SIZE];
+        ByteBuffer in = ByteBuffer.wrap(runs);
+        int i = 0;
+        while (in.hasRemaining()) {
+            int position = in.position();
+            int length = readVarInt(in);
+            readVarInt(in);
+            // Rows whose first cell is in this run
+            for (int row = (i + LAYER_SIZE - 1) / LAYER_SIZE; row * LAYER_SIZE < i + length; row++) {
+                rowRuns[row] = position;
+                rowRunCells[row] = i;
+            }
+            i += length;
+        }
+    }
+
+    /**
+     * @return Approximate number of bytes used by the compressed tiles, not counting the tiles kept as they are.
+     */
+    long getBytes() {
+        return palette.length + paletteOffsets.length * 4L + runs.length + heapCells.length * 8L;
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static class Builder {
+        private final Map<Class<?>, Integer> typeIds = new HashMap<>(); // -1 for types that can't be compressed
+        private final List<Constructor<? extends Tile>> types = new ArrayList<>();
+        private final Map<ByteBuffer, Integer> entries = new HashMap<>();
+        private final ByteArrayOutputStream palette = new ByteArrayOutputStream();
+        private final List<Integer> paletteOffsets = new ArrayList<>();
+        private final ByteArrayOutputStream runs = new ByteArrayOutputStream();
+        private final List<Integer> heapCells = new ArrayList<>();
+        private final List<Tile> heapTiles = new ArrayList<>();
+        private final ByteBuffer scratch = ByteBuffer.allocate(2 + OffHeapTile.MAX_STATE_SIZE);
+        private int runEntry;
+        private int runLength;
+
+        Builder() {
+            paletteOffsets.add(0);
+        }
+
+        /**
+         * @return Palette entry of a tile, or 0 if it needs to be kept as it is.
+         */
+        int entryOf(Tile tile, int cell) {
+            int type = typeId(tile.getClass());
+            if (type < 0 || tile.hasHeapState()) {
+                heapCells.add(cell);
+                heapTiles.add(tile);
+                return 0;
+            }
+            scratch.clear();
+            scratch.putShort((short) type);
+            tile.writeState(scratch);
+            if (scratch.position() - 2 > OffHeapTile.MAX_STATE_SIZE) {
+                throw new IllegalStateException("Tile '" + tile.getClass().getName() + "' wrote more than "
+                        + OffHeapTile.MAX_STATE_SIZE + " bytes of state!");
+            }
+            ByteBuffer key = ByteBuffer.wrap(Arrays.copyOf(scratch.array(), scratch.position()));
+            Integer entry = entries.get(key);
+            if (entry == null) {
+                palette.write(key.array(), 0, key.capacity());
+                paletteOffsets.add(palette.size());
+                entry = paletteOffsets.size() - 1;
+                entries.put(key, entry);
+            }
+            return entry;
+        }
+
+        void run(int entry, int length) {
+            if (length == 0) {
+                return;
+            }
+            if (entry == runEntry) {
+                runLength += length;
+                return;
+            }
+            flush();
+            runEntry = entry;
+            runLength = length;
+        }
+
+        CompressedLayer build() {
+            flush();
+            return new CompressedLayer(types, palette.toByteArray(),
+                    paletteOffsets.stream().mapToInt(Integer::intValue).toArray(), runs.toByteArray(),
+                    heapCells.stream().mapToInt(Integer::intValue).toArray(), heapTiles.toArray(new Tile[0]));
+        }
+
+        private void flush() {
+            if (runLength > 0) {
+                writeVarInt(runLength);
+                writeVarInt(runEntry);
+            }
+        }
+
+        private void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                runs.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            runs.write(value);
+        }
+
+        private int typeId(Class<? extends Tile> type) {
+            Integer id = typeIds.get(type);
+            if (id != null) {
+                return id;
+            }
+            id = -1;
+            if (type.isAnnotationPresent(OffHeapTile.class)) {
+                try {
+                    Constructor<? extends Tile> constructor = type.getDeclaredConstructor(int.class, int.class);
+                    constructor.setAccessible(true);
+                    id = types.size();
+                    types.add(constructor);
+                } catch (NoSuchMethodException e) {
+                    throw new IllegalStateException("Tile '" + type.getName() + "' is an OffHeapTile, but can't be "
+                            + "created with only its position!", e);
+                }
+            }
+            typeIds.put(type, id);
+            return id;
+        }
+    }
+}
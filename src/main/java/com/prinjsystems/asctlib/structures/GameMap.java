@@ -1,17 +1,34 @@
 package com.prinjsystems.asctlib.structures;
 
+import com.prinjsystems.asctlib.circuits.CircuitSimulator;
+import com.prinjsystems.asctlib.structures.conductors.ConductorTile;
 import java.awt.Graphics2D;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Stores all the layers of an ASCT world. An ASCT save file ({@code .ssf} files) is composed of a serialized GameMap.
+ * <p>
+ * A map is not thread safe: it should only be ticked and edited by one thread at a time. Other threads (like the UI
+ * or the network) can send edits with {@link #submit(Function)} and {@link #execute(Consumer)} without waiting for
+ * the map, and they will be applied right before the next tick.
  */
 public class GameMap implements Serializable {
     private static final long serialVersionUID = -5445523919009569824L;
 
     private List<Layer> layers; // A Deque would be great, but it is impossible to access n-th element in it
     private int currentLayer;
+    private boolean circuitCompilation;
+    private int layerCompressionDelay;
+    private transient CircuitSimulator circuitSimulator;
+    private transient ViaIndex viaIndex;
+    private transient AtomicReference<Edit<?>> pendingEdits; // Last submitted edit, each one points to the previous
 
     /**
      * Creates a GameMap, already initialized with a list of layers in it.
@@ -20,6 +37,7 @@ public class GameMap implements Serializable {
      */
     public GameMap(List<Layer> layers) {
         this.layers = layers;
+        pendingEdits = new AtomicReference<>();
     }
 
     /**
@@ -35,15 +53,184 @@ public class GameMap implements Serializable {
      * Tick all layers, in a first to last order.
      */
     public void tick() {
+        applyPendingEdits();
+        CircuitSimulator circuit = getCircuitSimulator();
+        if (circuit != null) {
+            circuit.beforeTick();
+        }
         for (Layer l : layers) {
-            l.tick();
+            l.tick(circuit);
+        }
+        if (layerCompressionDelay > 0) {
+            for (int i = 0; i < layers.size(); i++) {
+                Layer l = layers.get(i);
+                if (i != currentLayer && !l.isCompressed() && l.getSleepingFor() >= layerCompressionDelay) {
+                    l.compress();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends an edit to be applied to this map before the next tick. Can be called from any thread, and never
+     * blocks.
+     *
+     * @param edit Edit to apply to the map. Runs in the thread that ticks the map.
+     * @param <T>  Type of the result of the edit.
+     * @return A future that completes with the result of the edit once it was applied, or completes exceptionally if
+     * it threw an exception. Actions added to it without an executor may run in the thread that ticks the map.
+     */
+    public <T> CompletableFuture<T> submit(Function<? super GameMap, ? extends T> edit) {
+        Edit<T> e = new Edit<>(edit);
+        Edit<?> last;
+        do {
+            last = pendingEdits.get();
+            e.link = last;
+        } while (!pendingEdits.compareAndSet(last, e));
+        return e.future;
+    }
+
+    /**
+     * Same as {@link #submit(Function)}, for edits that have no result.
+     *
+     * @param edit Edit to apply to the map.
+     * @return A future that completes once the edit was applied.
+     */
+    public CompletableFuture<Void> execute(Consumer<? super GameMap> edit) {
+        return submit(map -> {
+            edit.accept(map);
+            return null;
+        });
+    }
+
+    /**
+     * Adds a tile to a layer before the next tick. See {@link Layer#addTile(Tile)}.
+     */
+    public CompletableFuture<Void> addTileAsync(Layer layer, Tile tile) {
+        return execute(map -> layer.addTile(tile));
+    }
+
+    /**
+     * Removes a tile from a layer before the next tick. See {@link Layer#removeTile(int, int)}.
+     */
+    public CompletableFuture<Void> removeTileAsync(Layer layer, int posX, int posY) {
+        return execute(map -> layer.removeTile(posX, posY));
+    }
+
+    /**
+     * Connects a tile to another (usually in another layer) before the next tick. See {@link
+     * ConductorTile#setConnectedTo(ActionTile)}.
+     */
+    public CompletableFuture<Void> setConnectedToAsync(ConductorTile tile, ActionTile connectedTo) {
+        return execute(map -> tile.setConnectedTo(connectedTo));
+    }
+
+    /**
+     * Applies all the edits submitted until now, in the order they were submitted. Called at the start of each tick,
+     * but can also be called by the thread that owns the map when it is not ticking. Edits submitted while this runs
+     * (including by the edits themselves) are left for the next time.
+     */
+    public void applyPendingEdits() {
+        Edit<?> last = pendingEdits.getAndSet(null);
+        if (last == null) {
+            return;
+        }
+        // The edits are linked from the last to the first, so the links are reversed to apply them in order
+        Edit<?> first = null;
+        while (last != null) {
+            Edit<?> previous = last.link;
+            last.link = first;
+            first = last;
+            last = previous;
+        }
+        for (Edit<?> e = first; e != null; e = e.link) {
+            e.apply(this);
+        }
+    }
+
+    public boolean isCircuitCompilation() {
+        return circuitCompilation;
+    }
+
+    /**
+     * Enables or disables circuit compilation. When enabled, wires of this map are compiled into nets that are
+     * simulated as a single node, instead of one tile per tick. See {@link CircuitSimulator} for details.
+     *
+     * @param circuitCompilation If circuits should be compiled.
+     */
+    public void setCircuitCompilation(boolean circuitCompilation) {
+        this.circuitCompilation = circuitCompilation;
+        if (!circuitCompilation && circuitSimulator != null) {
+            circuitSimulator.dispose();
+            circuitSimulator = null;
+        }
+    }
+
+    public int getLayerCompressionDelay() {
+        return layerCompressionDelay;
+    }
+
+    /**
+     * Enables or disables the compression of layers that are not being used, disabled by default. When enabled, layers
+     * other than the current one where all the chunks have been sleeping for a number of ticks are compressed (see
+     * {@link Layer#compress()}), and expanded back as soon as anything needs them.
+     *
+     * @param layerCompressionDelay Number of ticks a layer needs to be sleeping to be compressed, or 0 to never
+     *                              compress layers.
+     */
+    public void setLayerCompressionDelay(int layerCompressionDelay) {
+        if (layerCompressionDelay < 0) {
+            throw new IllegalArgumentException("Layer compression delay can't be negative!");
+        }
+        this.layerCompressionDelay = layerCompressionDelay;
+    }
+
+    /**
+     * @return Simulator of the compiled circuits of this map, or null if circuit compilation is disabled.
+     */
+    public CircuitSimulator getCircuitSimulator() {
+        if (circuitCompilation && circuitSimulator == null) {
+            circuitSimulator = new CircuitSimulator(this);
+        }
+        return circuitSimulator;
+    }
+
+    /**
+     * @return Index of all the vias of this map. Created the first time it is needed.
+     */
+    public ViaIndex getViaIndex() {
+        if (viaIndex == null) {
+            viaIndex = new ViaIndex(this);
         }
+        return viaIndex;
     }
 
     public List<Layer> getLayers() {
         return layers;
     }
 
+    /**
+     * Removes a layer from this map, and frees the memory it used outside of the heap (see {@link Layer#dispose()}).
+     * The current layer stays the same if it wasn't the removed one. Vias between the removed layer and the other
+     * layers are unlinked on both sides.
+     *
+     * @param layer Layer to remove.
+     * @return If the layer was part of this map.
+     */
+    public boolean removeLayer(Layer layer) {
+        int i = layers.indexOf(layer);
+        if (i < 0) {
+            return false;
+        }
+        getViaIndex().unlink(layer);
+        layers.remove(i);
+        if (currentLayer > i || currentLayer >= layers.size()) {
+            currentLayer = Math.max(0, currentLayer - 1);
+        }
+        layer.dispose();
+        return true;
+    }
+
     public int getCurrentLayer() {
         return currentLayer;
     }
@@ -73,4 +260,31 @@ public class GameMap implements Serializable {
             currentLayer = layers.size() - 1;
         }
     }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        pendingEdits = new AtomicReference<>();
+    }
+
+    private static class Edit<T> {
+        private final Function<? super GameMap, ? extends T> edit;
+        private final CompletableFuture<T> future;
+        private Edit<?> link; // Previous edit while pending, next one once taken to be applied
+
+        Edit(Function<? super GameMap, ? extends T> edit) {
+            this.edit = edit;
+            future = new CompletableFuture<>();
+        }
+
+        void apply(GameMap map) {
+            T result;
+            try {
+                result = edit.apply(map);
+            } catch (Throwable e) {
+                future.completeExceptionally(e); // A failed edit doesn't stop the others, nor leave its future waiting
+                return;
+            }
+            future.complete(result);
+        }
+    }
 }
@@ -1,11 +1,22 @@
 package com.prinjsystems.asctlib.structures;
 
+import com.prinjsystems.asctlib.circuits.CircuitSimulator;
 import com.prinjsystems.asctlib.structures.conductors.ConductorTile;
 import com.prinjsystems.asctlib.structures.conductors.light.Pixel;
+import com.prinjsystems.asctlib.structures.conductors.light.PixelGroup;
 import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
 
 public class Layer implements Serializable {
     /**
@@ -15,12 +26,40 @@ public class Layer implements Serializable {
      * would be any more useful than a layer of a third that size.
      */
     public static final int LAYER_SIZE = 1024; // Technically, the largest possible number is 46340, since the
-    private static final long serialVersionUID = 2019849710583642798L;
     // largest int number, and so the largest array index, is 2 ^ 31 - 1, 65536 * 65536 is just big enough to not fit.
     // However, there are limitations to how many memory the JVM can allocate, and since the computer I'm using to
     // develop this "game" is basically a potato, there's not much to use.
+    private static final long serialVersionUID = 2019849710583642798L;
+    /**
+     * Size of each side of a chunk. Chunks are the regions of the layer that stop being updated when all of their
+     * tiles are idle (see {@link #setChunkSleeping(boolean)}).
+     */
+    public static final int CHUNK_SIZE = 32;
+    private static final int CHUNKS = LAYER_SIZE / CHUNK_SIZE; // Chunks in each side of the layer
+    private static final int SLEEP_DELAY = 16; // How many ticks a chunk needs to be quiet before sleeping
+    /**
+     * Largest thermal interval. Above it, too much heat moves in a single step for the result to resemble the heat
+     * transferred tick by tick.
+     */
+    public static final int MAX_THERMAL_INTERVAL = 8;
     private Tile[] tiles; // Having a List would make it "infinite", but it will have an end anyway, and it is so
     // much faster to find tiles over an array than a List.
+    private transient TileIndex index; // Rebuilt from the tiles array when deserialized
+    private transient List<LayerListener> listeners;
+    private transient TimerWheel timers;
+    private boolean pixelWavefront;
+    private boolean chunkSleeping;
+    private int thermalInterval = 1;
+    private boolean offHeap;
+    private transient OffHeapChunks offHeapChunks; // Not null while off heap storage is enabled
+    private transient CompressedLayer compressed; // Not null while compressed, the tiles array is null then
+    private transient int sleepingFor; // Ticks since a chunk of this layer was last awake
+    private boolean mipmapped;
+    private transient LayerMipmaps mipmaps; // Not null once the mipmaps were used, until they are disabled
+    private transient BitSet awakeChunks;
+    private transient BitSet busyChunks; // Chunks with tiles that were not idle after this tick's update
+    private transient int[] quietFor; // Ticks each chunk has been quiet for
+    private transient BitSet changedChunks; // Chunks where the state of a tile changed since the last tick ended
 
     /**
      * Creates a layer with tiles already in it.
@@ -32,10 +71,14 @@ public class Layer implements Serializable {
             t.setLayer(this);
         }
         this.tiles = new Tile[LAYER_SIZE * LAYER_SIZE];
+        index = new TileIndex();
+        timers = new TimerWheel();
+        initChunks();
         for (Tile t : tiles) {
-            this.tiles[t.getPosX() + t.getPosY() * LAYER_SIZE] = t;
+            setTile(t.getPosX() + t.getPosY() * LAYER_SIZE, t);
             t.from = this;
         }
+        attachPixels();
     }
 
     /**
@@ -43,42 +86,133 @@ public class Layer implements Serializable {
      */
     public Layer() {
         this.tiles = new Tile[LAYER_SIZE * LAYER_SIZE];
+        index = new TileIndex();
+        timers = new TimerWheel();
+        initChunks();
+    }
+
+    private void initChunks() {
+        awakeChunks = new BitSet(CHUNKS * CHUNKS);
+        awakeChunks.set(0, CHUNKS * CHUNKS); // Everything starts awake, and empty chunks go to sleep soon
+        busyChunks = new BitSet(CHUNKS * CHUNKS);
+        quietFor = new int[CHUNKS * CHUNKS];
+        changedChunks = new BitSet(CHUNKS * CHUNKS);
     }
 
     void render(Graphics2D g) {
-        for (Tile t : tiles) {
-            if (t != null) {
-                t.render(g);
+        if (mipmapped) {
+            // Size of a cell on the screen, in pixels
+            double cellSize = Math.sqrt(Math.abs(g.getTransform().getDeterminant())) * Tile.TILE_SIZE;
+            if (cellSize <= 1) { // Closer than that, details smaller than a cell would be lost
+                // The level with the lowest resolution that still has at least a pixel for each pixel on the screen
+                int level = 0;
+                while (level < LayerMipmaps.LEVELS - 1 && cellSize * (1 << (level + 1)) <= 1) {
+                    level++;
+                }
+                g.drawImage(getMipmap(level), 0, 0, LAYER_SIZE * Tile.TILE_SIZE, LAYER_SIZE * Tile.TILE_SIZE, null);
+                return;
+            }
+        }
+        expand();
+        BitSet occupied = index.getOccupied();
+        for (int i = occupied.nextSetBit(0); i >= 0; i = occupied.nextSetBit(i + 1)) {
+            if (tiles[i] != null) { // Otherwise it is stored off heap, and rendered below
+                tiles[i].render(g);
+            }
+        }
+        if (offHeapChunks != null) {
+            offHeapChunks.render(g);
+        }
+    }
+
+    /**
+     * Updates all tiles inside this layer. Only the tiles of chunks that are awake are ticked and updated.
+     *
+     * @param circuit Simulator of the compiled circuits of the map, or null if circuit compilation is disabled.
+     */
+    void tick(CircuitSimulator circuit) {
+        // FIXME: In wavefront mode, pixels that were just turned off need to tick
+        List<Tile> activeTiles = new ArrayList<>();
+        forEachAwakeTile(tile -> {
+            if (tile instanceof ActionTile && ((ActionTile) tile).isActive()) {
+                activeTiles.add(tile);
+            }
+        });
+        if (circuit != null) {
+            circuit.layerStarted(this);
+        }
+        activeTiles.forEach(t -> ((ActionTile) t).tick()); // This is needed because otherwise tiles that are being
+        // powered vertically, from top to bottom, would all work in the same tick.
+        if (circuit != null) {
+            circuit.deliver(this); // Compiled nets power their ports as if the power went through the wire
+        }
+        timers.advance(timers.getTick() + 1);
+        if (compressed != null) {
+            statesChanged(); // Timers of the tiles that were kept as they are may have changed them
+            return; // Nothing woke it up, so nothing else happens
+        }
+
+        // Only found now, so tiles of chunks that were just woken up by power are updated in the same tick
+        List<Tile> awakeTiles = new ArrayList<>();
+        forEachAwakeTile(awakeTiles::add);
+        for (Tile t : awakeTiles) {
+            t.update();
+            if (chunkSleeping && !t.isIdle()) {
+                busyChunks.set(chunkIndex(t.getPosX(), t.getPosY()));
             }
         }
+        if (chunkSleeping) {
+            sleepQuietChunks();
+        }
+        sleepingFor = awakeChunks.isEmpty() ? sleepingFor + 1 : 0;
+        statesChanged();
     }
 
     /**
-     * Updates all tiles inside this layer.
+     * Performs an action with each tile of the chunks that are awake, row by row.
      */
-    void tick() {
-        // FIXME: Pixels that were just turned off need to tick
-        // TODO: Optimize
-        List<Tile> poweredTiles = new ArrayList<>();
-        List<Tile> notNullTiles = new ArrayList<>();
-        for (Tile tile : tiles) {
-            if (tile != null) {
-                if (tile instanceof ActionTile) {
-                    if (((ActionTile) tile).isPowered() ||
-                            (tile instanceof Pixel && ((Pixel) tile).isSpreading())) {
-                        poweredTiles.add(tile);
+    private void forEachAwakeTile(Consumer<Tile> action) {
+        BitSet occupied = index.getOccupied();
+        for (int chunkY = 0; chunkY < CHUNKS; chunkY++) {
+            int first = awakeChunks.nextSetBit(chunkY * CHUNKS);
+            if (first < 0) {
+                return;
+            }
+            if (first >= (chunkY + 1) * CHUNKS) {
+                chunkY = first / CHUNKS - 1; // Skip the rows of chunks where everything is asleep
+                continue;
+            }
+            for (int y = chunkY * CHUNK_SIZE; y < (chunkY + 1) * CHUNK_SIZE; y++) {
+                for (int c = first; c >= 0 && c < (chunkY + 1) * CHUNKS; c = awakeChunks.nextSetBit(c + 1)) {
+                    int start = (c % CHUNKS) * CHUNK_SIZE + y * LAYER_SIZE;
+                    int end = start + CHUNK_SIZE;
+                    for (int i = occupied.nextSetBit(start); i >= 0 && i < end; i = occupied.nextSetBit(i + 1)) {
+                        action.accept(tiles[i]);
                     }
                 }
-                notNullTiles.add(tile);
             }
         }
-        poweredTiles.forEach(t -> ((ActionTile) t).tick()); // This is needed because otherwise tiles that are being
-        // powered vertically, from top to bottom, would all work in the same tick.
-        notNullTiles.forEach(Tile::update);
+    }
+
+    private void sleepQuietChunks() {
+        for (int c = awakeChunks.nextSetBit(0); c >= 0; c = awakeChunks.nextSetBit(c + 1)) {
+            if (busyChunks.get(c)) {
+                quietFor[c] = 0;
+            } else if (++quietFor[c] >= SLEEP_DELAY) {
+                awakeChunks.clear(c);
+                if (offHeapChunks != null) {
+                    offHeapChunks.store(c);
+                }
+            }
+        }
+        busyChunks.clear();
     }
 
     /**
      * Add (or replaces an existing) tile to this layer, and changes its ownership to this layer.
+     * <p>
+     * Like any other edit, this should only be done by the thread that ticks the map. Other threads can use {@link
+     * GameMap#submit(java.util.function.Function)}.
      *
      * @param tile Tile to be added to this layer.
      */
@@ -86,12 +220,18 @@ public class Layer implements Serializable {
         if (tile == null) {
             return;
         }
-        tiles[tile.getPosX() + tile.getPosY() * LAYER_SIZE] = tile;
+        detachPixel(getTile(tile.getPosX(), tile.getPosY()));
+        setTile(tile.getPosX() + tile.getPosY() * LAYER_SIZE, tile);
         tile.from = this;
+        attachPixel(tile);
+        tilesChanged(tile.getPosX(), tile.getPosY(), 1, 1);
     }
 
     /**
      * Removes (sets to null) a tile in the specified position.
+     * <p>
+     * Like any other edit, this should only be done by the thread that ticks the map. Other threads can use {@link
+     * GameMap#submit(java.util.function.Function)}.
      *
      * @param posX X position of the tile.
      * @param posY Y position of the tile.
@@ -104,7 +244,9 @@ public class Layer implements Serializable {
             }
             ((ConductorTile) t).setConnectedTo(null);
         }
-        tiles[posX + posY * LAYER_SIZE] = null;
+        detachPixel(t);
+        setTile(posX + posY * LAYER_SIZE, null);
+        tilesChanged(posX, posY, 1, 1);
     }
 
     /**
@@ -137,7 +279,94 @@ public class Layer implements Serializable {
     }
 
     public Tile getTile(int x, int y) {
-        return tiles[x + y * LAYER_SIZE];
+        return tileAt(x + y * LAYER_SIZE);
+    }
+
+    /**
+     * Like {@link #getTile(int, int)}, but tiles stored off heap are read from their buffer instead of loading their
+     * chunk back, and tiles of a compressed layer are read without expanding it, so sleeping chunks stay asleep. Used
+     * to look at tiles without changing them, like to check how much heat a tile can give the tiles around it. The
+     * returned tile may be a flyweight that is reused by the next call, so it should only be read, and got again with
+     * {@link #getTile(int, int)} to be changed.
+     *
+     * @param x X position of the tile.
+     * @param y Y position of the tile.
+     * @return Tile at the position, or null if there is none or the position is outside of the layer.
+     */
+    public Tile peekTile(int x, int y) {
+        if (x < 0 || y < 0 || x >= LAYER_SIZE || y >= LAYER_SIZE) {
+            return null;
+        }
+        int i = x + y * LAYER_SIZE;
+        if (compressed != null) {
+            return compressed.peek(i);
+        }
+        Tile t = tiles[i];
+        if (t == null && offHeapChunks != null && index.getOccupied().get(i)) {
+            t = offHeapChunks.peek(chunkIndex(x, y), i);
+        }
+        return t;
+    }
+
+    /**
+     * Reads all the tiles of a chunk like {@link #peekTile(int, int)} does, which is much faster than reading them one
+     * at a time when they are stored off heap or the layer is compressed. The action should only read the tiles it
+     * gets, and not keep them.
+     *
+     * @param x      X position of a tile of the chunk.
+     * @param y      Y position of a tile of the chunk.
+     * @param action Action to be performed with each tile of the chunk, and its cell inside the chunk, {@code
+     *               x + y * CHUNK_SIZE} from its top left corner. Empty cells are skipped.
+     */
+    public void peekChunk(int x, int y, ObjIntConsumer<Tile> action) {
+        if (x < 0 || y < 0 || x >= LAYER_SIZE || y >= LAYER_SIZE) {
+            return;
+        }
+        int startX = x - x % CHUNK_SIZE;
+        int startY = y - y % CHUNK_SIZE;
+        ObjIntConsumer<Tile> toCell = (t, i) -> action.accept(t, i % LAYER_SIZE - startX
+                + (i / LAYER_SIZE - startY) * CHUNK_SIZE);
+        if (compressed != null) {
+            compressed.forEachIn(startX, startY, CHUNK_SIZE, CHUNK_SIZE, toCell);
+            return;
+        }
+        BitSet occupied = index.getOccupied();
+        for (int row = startY; row < startY + CHUNK_SIZE; row++) {
+            int end = startX + CHUNK_SIZE + row * LAYER_SIZE;
+            for (int i = occupied.nextSetBit(startX + row * LAYER_SIZE); i >= 0 && i < end;
+                 i = occupied.nextSetBit(i + 1)) {
+                if (tiles[i] != null) { // Otherwise it is stored off heap, and read below
+                    toCell.accept(tiles[i], i);
+                }
+            }
+        }
+        if (offHeapChunks != null) {
+            offHeapChunks.forEachStored(chunkIndex(x, y), toCell);
+        }
+    }
+
+    /**
+     * @return Tile at an index of the tiles array. If it is stored off heap, its chunk is loaded back and woken up.
+     */
+    private Tile tileAt(int i) {
+        expand();
+        Tile t = tiles[i];
+        if (t == null && offHeapChunks != null && index.getOccupied().get(i)) { // Empty cells don't need loading
+            int c = chunkIndex(i % LAYER_SIZE, i / LAYER_SIZE);
+            if (offHeapChunks.isStored(c)) {
+                wakeChunk(c);
+                t = tiles[i];
+            }
+        }
+        return t;
+    }
+
+    /**
+     * @return Timers of the tiles of this layer. The wheel is advanced by one tick right before the tiles of this
+     * layer are updated.
+     */
+    public TimerWheel getTimers() {
+        return timers;
     }
 
     /**
@@ -150,16 +379,643 @@ public class Layer implements Serializable {
      */
     void swapTiles(int x1, int y1, int x2, int y2) {
         Tile t1 = getTile(x1, y1);
+        Tile t2 = getTile(x2, y2);
+        detachPixel(t1);
+        detachPixel(t2);
         if (t1 != null) {
             t1.setPosX(x2);
             t1.setPosY(y2);
         }
-        Tile t2 = getTile(x2, y2);
         if (t2 != null) {
             t2.setPosX(x1);
             t2.setPosY(y1);
         }
-        tiles[x2 + y2 * LAYER_SIZE] = t1;
-        tiles[x1 + y1 * LAYER_SIZE] = t2;
+        setTile(x2 + y2 * LAYER_SIZE, t1);
+        setTile(x1 + y1 * LAYER_SIZE, t2);
+        attachPixel(t1);
+        attachPixel(t2);
+        tilesChanged(x1, y1, 1, 1);
+        tilesChanged(x2, y2, 1, 1);
+    }
+
+    public boolean isPixelWavefront() {
+        return pixelWavefront;
+    }
+
+    /**
+     * Sets how pixels of this layer spread their state. By default, pixels of the same color in contact with each
+     * other form a {@link PixelGroup}, that is turned on or off all at once. In wavefront mode, the state spreads
+     * from the pixel that was turned on or off to one more pixel around each tick, like it used to.
+     *
+     * @param pixelWavefront If pixels should spread their state one tile per tick.
+     */
+    public void setPixelWavefront(boolean pixelWavefront) {
+        if (this.pixelWavefront == pixelWavefront) {
+            return;
+        }
+        this.pixelWavefront = pixelWavefront;
+        if (pixelWavefront) {
+            PixelGroup.detachAll(this);
+        } else {
+            attachPixels();
+        }
+    }
+
+    private void attachPixels() {
+        if (!pixelWavefront) {
+            forEachTile(Pixel.class, 0, 0, LAYER_SIZE, LAYER_SIZE, PixelGroup::attach);
+        }
+    }
+
+    private void attachPixel(Tile tile) {
+        if (tile instanceof Pixel && !pixelWavefront) {
+            PixelGroup.attach((Pixel) tile);
+        }
+    }
+
+    private void detachPixel(Tile tile) {
+        if (tile instanceof Pixel) {
+            PixelGroup.detach((Pixel) tile);
+        }
+    }
+
+    public int getThermalInterval() {
+        return thermalInterval;
+    }
+
+    /**
+     * Sets every how many ticks heat is transferred between the tiles of this layer (and the air). Heat changes
+     * slowly compared to power, so transferring it less often frees most of the time spent updating tiles in
+     * circuits that are mostly logic. When heat is transferred, it is as much as would be transferred in all the
+     * ticks since the last time.
+     * <p>
+     * Accuracy: across each side where a tile is hotter than the tile around (or the air), a step moves 1 - (1 -
+     * r)^N of its temperature, r being its irradiation ratio, which is what N single ticks move while it stays
+     * hotter. So a tile cooling down in the air, or giving heat to tiles that stay colder than it, reaches exactly the
+     * same temperature it would tick by tick (only checked every N ticks), and tiles never give away more heat than
+     * they have. When the tile around gets hotter or colder than it during those N ticks, tick by tick it would have
+     * moved heat in only k of them, 1 - (1 - r)^k of its temperature, where k is at least 1 if the step moved heat
+     * and at most N - 1 if it didn't. Across each side, a step is then off by at most 1 - (1 - r)^(N - 1) of the
+     * temperature of the tile: with the irradiation ratio of the tiles of this library (0.025), 2.5% for N = 2, 7.3%
+     * for N = 4 and 16.2% for N = 8. The errors of the sides of a tile and of the tiles around it add up, so tiles
+     * next to tiles at almost the same temperature are the furthest off. Melting and falling are still checked every
+     * tick, but may start up to N - 1 ticks later.
+     *
+     * @param thermalInterval Number of ticks between heat transfers, from 1 (every tick, the default) to {@link
+     *                        #MAX_THERMAL_INTERVAL}.
+     */
+    public void setThermalInterval(int thermalInterval) {
+        if (thermalInterval < 1 || thermalInterval > MAX_THERMAL_INTERVAL) {
+            throw new IllegalArgumentException("Thermal interval needs to be between 1 and " + MAX_THERMAL_INTERVAL
+                    + ", got " + thermalInterval + "!");
+        }
+        this.thermalInterval = thermalInterval;
+    }
+
+    /**
+     * @return Number of ticks of heat that should be transferred in this tick, or 0 if heat is not transferred.
+     */
+    int getThermalSteps() {
+        return timers.getTick() % thermalInterval == 0 ? thermalInterval : 0;
+    }
+
+    public boolean isChunkSleeping() {
+        return chunkSleeping;
+    }
+
+    /**
+     * Enables or disables chunk sleeping, disabled by default. When enabled, chunks of this layer where all the tiles
+     * have been idle (see {@link Tile#isIdle()}) for a few ticks go to sleep, and their tiles stop being updated, so
+     * the time a tick takes depends only on the area of the layer where something is happening. Chunks are woken up
+     * when their tiles are edited, powered, or receive heat, or when tiles around them cool down.
+     * <p>
+     * Heat that reaches a sleeping chunk only starts spreading inside it in the next tick. Tiles that do something on
+     * their own in {@link Tile#update()} stop doing it while their chunk sleeps, unless they override {@link
+     * Tile#isIdle()}, so this should only be enabled when all the tile types used in the layer do that. Off heap
+     * storage ({@link #setOffHeap(boolean)}) and compression ({@link #compress()}) only work on sleeping chunks.
+     *
+     * @param chunkSleeping If idle chunks should sleep.
+     */
+    public void setChunkSleeping(boolean chunkSleeping) {
+        this.chunkSleeping = chunkSleeping;
+        if (!chunkSleeping) {
+            expand();
+            loadAll();
+            awakeChunks.set(0, CHUNKS * CHUNKS);
+        }
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Enables or disables off heap storage, disabled by default. When enabled, the tiles of chunks that go to sleep
+     * (see {@link #setChunkSleeping(boolean)}) are stored in direct buffers, outside of the heap, and the tile
+     * objects are dropped, so the heap and the time spent by the garbage collector only depend on the area of the
+     * layer where something is happening, and not on the size of the map. Only tiles with the {@link OffHeapTile}
+     * annotation are stored, and only while they don't have references to other objects (like vias or compiled
+     * nets). Stored tiles are still rendered, and getting one of them loads its whole chunk back and wakes it up.
+     * <p>
+     * Since stored tiles are recreated when they are loaded back, references to tiles of sleeping chunks kept outside
+     * of the layer stop being valid, so they should be got again from the layer when needed. Layers that are not used
+     * anymore should be {@link #dispose() disposed}, to free the memory they use outside of the heap right away.
+     *
+     * @param offHeap If the tiles of sleeping chunks should be stored off heap.
+     */
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+        if (compressed != null) {
+            return; // Done when it is expanded
+        }
+        if (offHeap && offHeapChunks == null) {
+            offHeapChunks = new OffHeapChunks(this, tiles);
+            storeSleeping();
+        } else if (!offHeap && offHeapChunks != null) {
+            loadAll();
+            offHeapChunks = null;
+        }
+    }
+
+    /**
+     * @return How many chunks of this layer have tiles stored off heap.
+     */
+    public int countOffHeapChunks() {
+        return offHeapChunks != null ? offHeapChunks.countStored() : 0;
+    }
+
+    /**
+     * @return How many bytes this layer is using outside of the heap.
+     */
+    public long getOffHeapBytes() {
+        return offHeapChunks != null ? offHeapChunks.getBytes() : 0;
+    }
+
+    /**
+     * Frees the memory this layer uses outside of the heap right away, instead of when the layer is garbage
+     * collected. The tiles that were stored there are dropped, so this should only be called when the layer will not
+     * be used anymore. {@link GameMap#removeLayer(Layer)} does it for the layers it removes.
+     */
+    public void dispose() {
+        if (offHeapChunks != null) {
+            offHeapChunks.dispose(index);
+        }
+    }
+
+    public boolean isCompressed() {
+        return compressed != null;
+    }
+
+    /**
+     * Compresses the tiles of this layer, if all of its chunks are sleeping (see {@link #setChunkSleeping(boolean)}).
+     * Layers that are not being used take a fraction of the memory when compressed: tiles that can be stored off
+     * heap (see {@link OffHeapTile}) are kept as a palette of their different states, and the cells of the layer as
+     * runs of cells with the same state, so empty areas and wires that didn't change cost almost nothing. Other tiles
+     * are kept as they are.
+     * <p>
+     * The layer is expanded back as soon as anything needs it: getting or editing its tiles, rendering it, or any of
+     * its tiles being woken up, like when power comes through a via. Like with off heap storage, the tiles are
+     * recreated when the layer is expanded, so references to them kept outside of the layer stop being valid. Maps
+     * can compress their layers automatically (see {@link GameMap#setLayerCompressionDelay(int)}).
+     *
+     * @return If the layer is compressed.
+     */
+    public boolean compress() {
+        if (compressed != null) {
+            return true;
+        }
+        if (!awakeChunks.isEmpty()) {
+            return false;
+        }
+        if (mipmaps != null && mipmaps.isDirty()) {
+            mipmaps.refresh(tiles, index.getOccupied(), offHeapChunks); // So they can be used without expanding it
+        }
+        loadAll(); // The compressed tiles replace the ones stored off heap
+        offHeapChunks = null;
+        compressed = CompressedLayer.compress(tiles, index.getOccupied());
+        tiles = null;
+        return true;
+    }
+
+    /**
+     * @return Approximate number of bytes used by this layer while compressed, not counting the tiles that are kept
+     * as they are, or 0 if it is not compressed.
+     */
+    public long getCompressedBytes() {
+        return compressed != null ? compressed.getBytes() : 0;
+    }
+
+    public boolean isMipmapped() {
+        return mipmapped;
+    }
+
+    /**
+     * Enables or disables mipmaps, disabled by default. When enabled, a layer zoomed out so far that each cell takes
+     * at most a pixel on the screen is rendered from an image of the whole layer at the closest resolution (see {@link
+     * #getMipmap(int)}), instead of tile by tile, so rendering all of it costs about as much as rendering a small part
+     * of it up close. Closer than that it is still rendered tile by tile, since details smaller than a cell, like the
+     * borders of vias, are not in the images. The images are kept up to date by painting again only the chunks where
+     * tiles were edited or changed their state (see {@link LayerListener#statesChanged(Layer, BitSet)}), whether or
+     * not chunk sleeping is enabled.
+     *
+     * @param mipmapped If zoomed out renders should use mipmaps.
+     */
+    public void setMipmapped(boolean mipmapped) {
+        this.mipmapped = mipmapped;
+        if (!mipmapped) {
+            mipmaps = null;
+        }
+    }
+
+    /**
+     * Will return an image of the whole layer, for example for a minimap. Level 0 has a pixel for each tile, with its
+     * color (empty cells are transparent), and each level after it has half the resolution of the one before it,
+     * down to a single pixel. The image is updated each time this is called, and should only be used until the next
+     * tick.
+     *
+     * @param level Level of the image.
+     * @return Image of the layer at that level. Its size is {@code LAYER_SIZE >> level}.
+     */
+    public BufferedImage getMipmap(int level) {
+        if (level < 0 || level >= LayerMipmaps.LEVELS) {
+            throw new IllegalArgumentException("Mipmap level must be between 0 and " + (LayerMipmaps.LEVELS - 1)
+                    + "!");
+        }
+        if (mipmaps == null) {
+            mipmaps = new LayerMipmaps();
+        }
+        if (mipmaps.isDirty()) {
+            expand();
+            mipmaps.refresh(tiles, index.getOccupied(), offHeapChunks);
+        }
+        return mipmaps.getImage(level);
+    }
+
+    /**
+     * @return Number of ticks since any chunk of this layer was last awake.
+     */
+    int getSleepingFor() {
+        return sleepingFor;
+    }
+
+    private void expand() {
+        if (compressed == null) {
+            return;
+        }
+        tiles = compressed.expand(this);
+        compressed = null;
+        sleepingFor = 0;
+        if (offHeap) {
+            offHeapChunks = new OffHeapChunks(this, tiles);
+            storeSleeping();
+        }
+    }
+
+    private void storeSleeping() {
+        for (int c = awakeChunks.nextClearBit(0); c < CHUNKS * CHUNKS; c = awakeChunks.nextClearBit(c + 1)) {
+            offHeapChunks.store(c);
+        }
+    }
+
+    private void loadAll() {
+        if (offHeapChunks != null) {
+            for (int c = 0; c < CHUNKS * CHUNKS; c++) {
+                offHeapChunks.load(c);
+            }
+        }
+    }
+
+    /**
+     * @param x X position of a tile.
+     * @param y Y position of a tile.
+     * @return If the chunk of that position is awake, that is, if its tiles are being updated.
+     */
+    public boolean isChunkAwake(int x, int y) {
+        return awakeChunks.get(chunkIndex(x, y));
+    }
+
+    /**
+     * @return How many chunks of this layer are awake.
+     */
+    public int countAwakeChunks() {
+        return awakeChunks.cardinality();
+    }
+
+    /**
+     * Wakes up the chunk of a position, so that its tiles are updated for at least a few more ticks.
+     *
+     * @param x X position of a tile.
+     * @param y Y position of a tile.
+     */
+    void wakeChunk(int x, int y) {
+        if (x >= 0 && y >= 0 && x < LAYER_SIZE && y < LAYER_SIZE) {
+            wakeChunk(chunkIndex(x, y));
+        }
+    }
+
+    private void wakeChunk(int c) {
+        expand();
+        if (offHeapChunks != null && offHeapChunks.isStored(c)) {
+            offHeapChunks.load(c); // Chunks that are awake need their tiles on the heap
+        }
+        awakeChunks.set(c);
+        quietFor[c] = 0;
+    }
+
+    void wakeChunksAround(int x, int y) {
+        wakeChunk(x - 1, y);
+        wakeChunk(x + 1, y);
+        wakeChunk(x, y - 1);
+        wakeChunk(x, y + 1);
+    }
+
+    private void wakeChunks(int x, int y, int width, int height) {
+        int minX = Math.max(0, x) / CHUNK_SIZE;
+        int minY = Math.max(0, y) / CHUNK_SIZE;
+        int maxX = (Math.min(LAYER_SIZE, x + width) - 1) / CHUNK_SIZE;
+        int maxY = (Math.min(LAYER_SIZE, y + height) - 1) / CHUNK_SIZE;
+        for (int chunkY = minY; chunkY <= maxY; chunkY++) {
+            for (int chunkX = minX; chunkX <= maxX; chunkX++) {
+                wakeChunk(chunkX + chunkY * CHUNKS);
+            }
+        }
+    }
+
+    private static int chunkIndex(int x, int y) {
+        return x / CHUNK_SIZE + y / CHUNK_SIZE * CHUNKS;
+    }
+
+    public void addListener(LayerListener listener) {
+        if (listeners == null) {
+            listeners = new CopyOnWriteArrayList<>();
+        }
+        listeners.add(listener);
+    }
+
+    public void removeListener(LayerListener listener) {
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Notifies the listeners of this layer that the tiles inside a rectangle changed. This is done automatically when
+     * tiles are added, removed or moved, but tiles that change their connections to other tiles (like vias) need to
+     * call it themselves.
+     *
+     * @param x      X position of the top left corner of the rectangle.
+     * @param y      Y position of the top left corner of the rectangle.
+     * @param width  Width of the rectangle.
+     * @param height Height of the rectangle.
+     */
+    public void tilesChanged(int x, int y, int width, int height) {
+        wakeChunks(x - 1, y - 1, width + 2, height + 2); // The tiles around may be affected too
+        if (mipmaps != null) {
+            mipmaps.markDirty(x, y, width, height);
+        }
+        if (listeners != null) {
+            for (LayerListener listener : listeners) {
+                listener.tilesChanged(this, x, y, width, height);
+            }
+        }
+    }
+
+    /**
+     * Notifies the listeners of this layer that the state of the tiles inside a rectangle changed, without the tiles
+     * being updated. See {@link LayerListener#tilesRepainted(Layer, int, int, int, int)}.
+     *
+     * @param x      X position of the top left corner of the rectangle.
+     * @param y      Y position of the top left corner of the rectangle.
+     * @param width  Width of the rectangle.
+     * @param height Height of the rectangle.
+     */
+    public void tilesRepainted(int x, int y, int width, int height) {
+        if (mipmaps != null) {
+            mipmaps.markDirty(x, y, width, height);
+        }
+        if (listeners != null) {
+            for (LayerListener listener : listeners) {
+                listener.tilesRepainted(this, x, y, width, height);
+            }
+        }
+    }
+
+    /**
+     * Marks the chunk of a tile as changed, see {@link Tile#stateChanged()}. The mipmaps are painted again the next
+     * time they are used, and the listeners find out at the end of the tick.
+     */
+    void stateChanged(int x, int y) {
+        if (x >= 0 && y >= 0 && x < LAYER_SIZE && y < LAYER_SIZE) {
+            int c = chunkIndex(x, y);
+            changedChunks.set(c);
+            if (mipmaps != null) {
+                mipmaps.markDirty(c); // Done right away, since layers that are only replayed are never ticked
+            }
+        }
+    }
+
+    /**
+     * Notifies the listeners of this layer of the chunks where the state of a tile changed.
+     */
+    private void statesChanged() {
+        if (changedChunks.isEmpty()) {
+            return;
+        }
+        if (listeners != null) {
+            for (LayerListener listener : listeners) {
+                listener.statesChanged(this, changedChunks);
+            }
+        }
+        changedChunks.clear();
+    }
+
+    /**
+     * Will return all the tiles of a type (including its subclasses) inside this layer. For example, {@code
+     * getTiles(ConductorTile.class)} returns all the conductors of this layer, including vias.
+     *
+     * @param type Type of the tiles.
+     * @param <T>  Type of the tiles.
+     * @return Tiles of the specified type, row by row.
+     */
+    public <T extends Tile> List<T> getTiles(Class<T> type) {
+        return getTiles(type, 0, 0, LAYER_SIZE, LAYER_SIZE);
+    }
+
+    /**
+     * Will return all the tiles of a type (including its subclasses) that match a filter, for example all the
+     * pixels of some color.
+     *
+     * @param type   Type of the tiles.
+     * @param filter Filter that the tiles should match.
+     * @param <T>    Type of the tiles.
+     * @return Tiles of the specified type that match the filter, row by row.
+     */
+    public <T extends Tile> List<T> getTiles(Class<T> type, Predicate<? super T> filter) {
+        List<T> result = new ArrayList<>();
+        forEachTile(type, 0, 0, LAYER_SIZE, LAYER_SIZE, t -> {
+            if (filter.test(t)) {
+                result.add(t);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Will return all the tiles of a type (including its subclasses) inside a rectangle of this layer.
+     *
+     * @param type   Type of the tiles. {@code Tile.class} will return all the tiles inside the rectangle.
+     * @param x      X position of the top left corner of the rectangle.
+     * @param y      Y position of the top left corner of the rectangle.
+     * @param width  Width of the rectangle.
+     * @param height Height of the rectangle.
+     * @param <T>    Type of the tiles.
+     * @return Tiles of the specified type inside the rectangle, row by row.
+     */
+    public <T extends Tile> List<T> getTiles(Class<T> type, int x, int y, int width, int height) {
+        List<T> result = new ArrayList<>();
+        forEachTile(type, x, y, width, height, result::add);
+        return result;
+    }
+
+    /**
+     * Will return all the tiles inside a rectangle of this layer that are hotter than a temperature.
+     *
+     * @param x      X position of the top left corner of the rectangle.
+     * @param y      Y position of the top left corner of the rectangle.
+     * @param width  Width of the rectangle.
+     * @param height Height of the rectangle.
+     * @param temp   Temperature (in celsius) the tiles need to be above.
+     * @return Tiles inside the rectangle hotter than the specified temperature, row by row.
+     */
+    public List<Tile> getTilesHotterThan(int x, int y, int width, int height, float temp) {
+        List<Tile> result = new ArrayList<>();
+        forEachTile(Tile.class, x, y, width, height, t -> {
+            if (t.getTemp() > temp) {
+                result.add(t);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Will perform an action with each tile of a type (including its subclasses) inside a rectangle of this layer.
+     * Only the occupied cells of the rectangle are visited, so this is as fast as the number of tiles of that type
+     * in the rectangle allows. The rectangle is clipped to the bounds of the layer.
+     * <p>
+     * The action should not add or remove tiles from this layer.
+     *
+     * @param type   Type of the tiles. {@code Tile.class} will visit all the tiles inside the rectangle.
+     * @param x      X position of the top left corner of the rectangle.
+     * @param y      Y position of the top left corner of the rectangle.
+     * @param width  Width of the rectangle.
+     * @param height Height of the rectangle.
+     * @param action Action to be performed with each tile.
+     * @param <T>    Type of the tiles.
+     */
+    public <T extends Tile> void forEachTile(Class<T> type, int x, int y, int width, int height,
+                                             Consumer<? super T> action) {
+        int minX = Math.max(0, x);
+        int minY = Math.max(0, y);
+        int maxX = Math.min(LAYER_SIZE, x + width);
+        int maxY = Math.min(LAYER_SIZE, y + height);
+        if (minX >= maxX || minY >= maxY) {
+            return;
+        }
+
+        List<BitSet> matching = index.getMatching(type);
+        if (matching.isEmpty()) {
+            return;
+        }
+        if (matching.size() == 1) {
+            BitSet bits = matching.get(0);
+            for (int row = minY; row < maxY; row++) {
+                int end = maxX + row * LAYER_SIZE;
+                for (int i = bits.nextSetBit(minX + row * LAYER_SIZE); i >= 0 && i < end;
+                     i = bits.nextSetBit(i + 1)) {
+                    action.accept(type.cast(tileAt(i)));
+                }
+            }
+            return;
+        }
+        // The bitsets of each type are merged while walking them, so the tiles are still found in order, and not
+        // grouped by type
+        int[] next = new int[matching.size()]; // Next set bit of each bitset
+        for (int row = minY; row < maxY; row++) {
+            int end = maxX + row * LAYER_SIZE;
+            for (int k = 0; k < next.length; k++) {
+                next[k] = matching.get(k).nextSetBit(minX + row * LAYER_SIZE);
+            }
+            while (true) {
+                int first = -1;
+                for (int k = 0; k < next.length; k++) {
+                    if (next[k] >= 0 && next[k] < end && (first < 0 || next[k] < next[first])) {
+                        first = k;
+                    }
+                }
+                if (first < 0) {
+                    break;
+                }
+                int i = next[first];
+                next[first] = matching.get(first).nextSetBit(i + 1);
+                action.accept(type.cast(tileAt(i)));
+            }
+        }
+    }
+
+    /**
+     * @param type Type of the tiles.
+     * @return How many tiles of a type (including its subclasses) there are in this layer.
+     */
+    public int countTiles(Class<? extends Tile> type) {
+        int count = 0;
+        for (BitSet bits : index.getMatching(type)) {
+            count += bits.cardinality();
+        }
+        return count;
+    }
+
+    /**
+     * Every change to the tiles array should go through this method, to keep the index up to date.
+     */
+    private void setTile(int i, Tile tile) {
+        Tile old = tiles[i];
+        if (old != null) {
+            index.remove(old, i);
+        }
+        tiles[i] = tile;
+        if (tile != null) {
+            index.add(tile, i);
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        boolean wasCompressed = compressed != null;
+        expand();
+        loadAll(); // Stored tiles are saved like any other
+        out.defaultWriteObject();
+        if (wasCompressed) {
+            compress();
+        } else if (offHeapChunks != null) {
+            storeSleeping();
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (thermalInterval < 1) {
+            thermalInterval = 1; // Saved before it existed
+        }
+        timers = new TimerWheel();
+        initChunks();
+        index = new TileIndex();
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] != null) {
+                index.add(tiles[i], i);
+            }
+        }
+        attachPixels();
+        if (offHeap) {
+            offHeapChunks = new OffHeapChunks(this, tiles);
+        }
     }
 }
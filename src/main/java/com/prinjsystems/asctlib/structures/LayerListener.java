@@ -0,0 +1,49 @@
+package com.prinjsystems.asctlib.structures;
+
+import java.util.BitSet;
+
+/**
+ * Listens to changes in the tiles of a {@link Layer}, such as tiles being added, removed, moved or having their via
+ * connections changed. Changes in the state of a tile (like it being powered or heating up) are notified once per
+ * tick, for the chunks where they happened (see {@link #statesChanged(Layer, BitSet)}), except for changes that
+ * happen to tiles that are not being updated (see {@link #tilesRepainted(Layer, int, int, int, int)}).
+ */
+public interface LayerListener {
+    /**
+     * Called after the tiles inside a rectangle of a layer changed.
+     *
+     * @param layer  Layer where the change happened.
+     * @param x      X position of the top left corner of the rectangle.
+     * @param y      Y position of the top left corner of the rectangle.
+     * @param width  Width of the rectangle.
+     * @param height Height of the rectangle.
+     */
+    void tilesChanged(Layer layer, int x, int y, int width, int height);
+
+    /**
+     * Called after the state of the tiles inside a rectangle of a layer changed all at once, without them being
+     * updated, like when a {@link com.prinjsystems.asctlib.structures.conductors.light.PixelGroup} is turned on or
+     * off. The tiles themselves are the same, but they may look different.
+     *
+     * @param layer  Layer where the change happened.
+     * @param x      X position of the top left corner of the rectangle.
+     * @param y      Y position of the top left corner of the rectangle.
+     * @param width  Width of the rectangle.
+     * @param height Height of the rectangle.
+     */
+    default void tilesRepainted(Layer layer, int x, int y, int width, int height) {
+    }
+
+    /**
+     * Called at the end of each tick of a layer where the state of some tiles changed, like them being powered or
+     * their temperature changing, during the tick or since the last one. Chunks where nothing changed are not
+     * included, even if their tiles were updated.
+     *
+     * @param layer  Layer that was ticked.
+     * @param chunks Chunks where the state of a tile changed, as {@code chunkX + chunkY * chunks}, where chunks is the
+     *               number of chunks in each side of the layer ({@link Layer#LAYER_SIZE} / {@link
+     *               Layer#CHUNK_SIZE}). Reused after the call, so it should not be kept.
+     */
+    default void statesChanged(Layer layer, BitSet chunks) {
+    }
+}
@@ -0,0 +1,136 @@
+package com.prinjsystems.asctlib.structures;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static com.prinjsystems.asctlib.structures.Layer.CHUNK_SIZE;
+import static com.prinjsystems.asctlib.structures.Layer.LAYER_SIZE;
+
+/**
+ * Images of a whole layer at decreasing resolutions, used to render it when zoomed out (see {@link
+ * Layer#setMipmapped(boolean)}). Level 0 has one pixel for each cell, with the color of its tile, and each level after
+ * it has half the resolution of the previous one, each pixel being the average of four pixels of the previous level.
+ * Empty cells are transparent.
+ * <p>
+ * Only the chunks that were marked as dirty are painted again, so keeping the images up to date costs as much as the
+ * area of the layer where something is happening.
+ */
+final class LayerMipmaps {
+    static final int LEVELS = Integer.numberOfTrailingZeros(LAYER_SIZE) + 1; // Down to a single pixel
+    private static final int CHUNKS = LAYER_SIZE / CHUNK_SIZE;
+
+    private final BufferedImage[] images;
+    private final int[][] pixels; // Pixels of each image, premultiplied ARGB
+    private final BitSet dirty; // Chunks that need to be painted again
+
+    LayerMipmaps() {
+        images = new BufferedImage[LEVELS];
+        pixels = new int[LEVELS][];
+        for (int level = 0; level < LEVELS; level++) {
+            int size = LAYER_SIZE >> level;
+            images[level] = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB_PRE);
+            pixels[level] = ((DataBufferInt) images[level].getRaster().getDataBuffer()).getData();
+        }
+        dirty = new BitSet(CHUNKS * CHUNKS);
+        dirty.set(0, CHUNKS * CHUNKS);
+    }
+
+    BufferedImage getImage(int level) {
+        return images[level];
+    }
+
+    boolean isDirty() {
+        return !dirty.isEmpty();
+    }
+
+    void markDirty(int chunk) {
+        dirty.set(chunk);
+    }
+
+    void markDirty(BitSet chunks) {
+        dirty.or(chunks);
+    }
+
+    /**
+     * Marks the chunks inside a rectangle of the layer as dirty. The rectangle is clipped to the bounds of the layer.
+     */
+    void markDirty(int x, int y, int width, int height) {
+        int minX = Math.max(0, x) / CHUNK_SIZE;
+        int minY = Math.max(0, y) / CHUNK_SIZE;
+        int maxX = (Math.min(LAYER_SIZE, x + width) - 1) / CHUNK_SIZE;
+        int maxY = (Math.min(LAYER_SIZE, y + height) - 1) / CHUNK_SIZE;
+        for (int chunkY = minY; chunkY <= maxY; chunkY++) {
+            dirty.set(minX + chunkY * CHUNKS, maxX + chunkY * CHUNKS + 1);
+        }
+    }
+
+    /**
+     * Paints the dirty chunks again, in all levels.
+     *
+     * @param tiles         Tiles array of the layer.
+     * @param occupied      Occupied cells of the layer.
+     * @param offHeapChunks Tiles of the layer stored off heap, or null if off heap storage is disabled.
+     */
+    void refresh(Tile[] tiles, BitSet occupied, OffHeapChunks offHeapChunks) {
+        int[] base = pixels[0];
+        for (int c = dirty.nextSetBit(0); c >= 0; c = dirty.nextSetBit(c + 1)) {
+            int x = c % CHUNKS * CHUNK_SIZE;
+            int y = c / CHUNKS * CHUNK_SIZE;
+            for (int row = y; row < y + CHUNK_SIZE; row++) {
+                int start = x + row * LAYER_SIZE; // The base level has one pixel per cell, so indices are the same
+                int end = start + CHUNK_SIZE;
+                Arrays.fill(base, start, end, 0);
+                for (int i = occupied.nextSetBit(start); i >= 0 && i < end; i = occupied.nextSetBit(i + 1)) {
+                    if (tiles[i] != null) { // Otherwise it is stored off heap, and painted below
+                        base[i] = premultiply(tiles[i].getColor().getRGB());
+                    }
+                }
+            }
+            if (offHeapChunks != null && offHeapChunks.isStored(c)) {
+                offHeapChunks.forEachStored(c, (t, i) -> base[i] = premultiply(t.getColor().getRGB()));
+            }
+            for (int level = 1; level < LEVELS; level++) {
+                downsample(level, x >> level, y >> level, Math.max(1, CHUNK_SIZE >> level));
+            }
+        }
+        dirty.clear();
+    }
+
+    /**
+     * Paints a square of a level from the level before it.
+     */
+    private void downsample(int level, int x, int y, int size) {
+        int[] src = pixels[level - 1];
+        int[] dst = pixels[level];
+        int srcSize = LAYER_SIZE >> (level - 1);
+        int dstSize = LAYER_SIZE >> level;
+        for (int row = y; row < y + size; row++) {
+            for (int col = x; col < x + size; col++) {
+                int i = col * 2 + row * 2 * srcSize;
+                dst[col + row * dstSize] = average(src[i], src[i + 1], src[i + srcSize], src[i + srcSize + 1]);
+            }
+        }
+    }
+
+    private static int average(int a, int b, int c, int d) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int sum = (a >>> shift & 0xFF) + (b >>> shift & 0xFF) + (c >>> shift & 0xFF) + (d >>> shift & 0xFF);
+            result |= (sum + 2) / 4 << shift;
+        }
+        return result;
+    }
+
+    private static int premultiply(int argb) {
+        int alpha = argb >>> 24;
+        if (alpha == 0xFF) {
+            return argb;
+        }
+        int r = (argb >> 16 & 0xFF) * alpha / 0xFF;
+        int g = (argb >> 8 & 0xFF) * alpha / 0xFF;
+        int b = (argb & 0xFF) * alpha / 0xFF;
+        return alpha << 24 | r << 16 | g << 8 | b;
+    }
+}
@@ -0,0 +1,286 @@
+package com.prinjsystems.asctlib.structures;
+
+import java.awt.Graphics2D;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+import static com.prinjsystems.asctlib.structures.Layer.CHUNK_SIZE;
+import static com.prinjsystems.asctlib.structures.Layer.LAYER_SIZE;
+
+/**
+ * Stores the {@link OffHeapTile}s of the sleeping chunks of a layer in direct buffers, outside of the heap (see
+ * {@link Layer#setOffHeap(boolean)}), so they don't take heap space nor time from the garbage collector.
+ * <p>
+ * Each stored chunk has a buffer of its own, with one record for each stored tile: its cell inside the chunk and the
+ * id of its type, followed by the state written by the tile itself. Buffers are freed as soon as their chunk is
+ * loaded back, instead of waiting for the garbage collector, when the JVM allows it.
+ */
+final class OffHeapChunks {
+    private static final int CHUNKS = LAYER_SIZE / CHUNK_SIZE;
+    private static final int CHUNK_CELLS = CHUNK_SIZE * CHUNK_SIZE;
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Not available, buffers are freed when they are garbage collected
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final Layer layer;
+    private final Tile[] tiles;
+    private final ByteBuffer[] chunks;
+    private final BitSet stored;
+    private final List<Constructor<? extends Tile>> types; // Index is the type id
+    private final Map<Class<?>, Integer> typeIds; // -1 for types that can't be stored
+    private final List<Tile> flyweights; // One tile of each type, used to render stored tiles without creating them
+    private final ByteBuffer scratch;
+    private long bytes;
+
+    /**
+     * @param layer Layer whose tiles will be stored.
+     * @param tiles Tiles array of the layer.
+     */
+    OffHeapChunks(Layer layer, Tile[] tiles) {
+        this.layer = layer;
+        this.tiles = tiles;
+        chunks = new ByteBuffer[CHUNKS * CHUNKS];
+        stored = new BitSet(CHUNKS * CHUNKS);
+        types = new ArrayList<>();
+        typeIds = new HashMap<>();
+        flyweights = new ArrayList<>();
+        scratch = ByteBuffer.allocate(CHUNK_CELLS * (4 + OffHeapTile.MAX_STATE_SIZE)).order(ByteOrder.nativeOrder());
+    }
+
+    boolean isStored(int chunk) {
+        return stored.get(chunk);
+    }
+
+    int countStored() {
+        return stored.cardinality();
+    }
+
+    /**
+     * @return Bytes used by the buffers of the stored chunks.
+     */
+    long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Stores the tiles of a chunk that can be stored, and removes them from the tiles array. Tiles that can't be
+     * stored stay where they are.
+     *
+     * @param chunk Chunk to store. Should be sleeping.
+     */
+    void store(int chunk) {
+        if (stored.get(chunk)) {
+            return;
+        }
+        scratch.clear();
+        int start = firstCell(chunk);
+        for (int cell = 0; cell < CHUNK_CELLS; cell++) {
+            int i = start + cell % CHUNK_SIZE + cell / CHUNK_SIZE * LAYER_SIZE;
+            Tile t = tiles[i];
+            if (t == null || t.hasHeapState()) {
+                continue;
+            }
+            int id = typeId(t.getClass());
+            if (id < 0) {
+                continue;
+            }
+            scratch.putShort((short) cell);
+            scratch.putShort((short) id);
+            int stateStart = scratch.position();
+            t.writeState(scratch);
+            if (scratch.position() - stateStart > OffHeapTile.MAX_STATE_SIZE) {
+                throw new IllegalStateException("Tile '" + t.getClass().getName() + "' wrote more than "
+                        + OffHeapTile.MAX_STATE_SIZE + " bytes of state!");
+            }
+            tiles[i] = null; // Still in the index of the layer, its cell is occupied
+        }
+        if (scratch.position() == 0) {
+            return;
+        }
+        scratch.flip();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(scratch.remaining()).order(ByteOrder.nativeOrder());
+        buffer.put(scratch);
+        buffer.flip();
+        chunks[chunk] = buffer;
+        stored.set(chunk);
+        bytes += buffer.capacity();
+    }
+
+    /**
+     * Recreates the stored tiles of a chunk, puts them back in the tiles array and frees the buffer of the chunk.
+     *
+     * @param chunk Chunk to load.
+     */
+    void load(int chunk) {
+        ByteBuffer buffer = chunks[chunk];
+        if (buffer == null) {
+            return;
+        }
+        int start = firstCell(chunk);
+        while (buffer.hasRemaining()) {
+            int cell = buffer.getShort();
+            Constructor<? extends Tile> constructor = types.get(buffer.getShort());
+            int x = start % LAYER_SIZE + cell % CHUNK_SIZE;
+            int y = start / LAYER_SIZE + cell / CHUNK_SIZE;
+            Tile t;
+            try {
+                t = constructor.newInstance(x, y);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not recreate tile '"
+                        + constructor.getDeclaringClass().getName() + "'!", e);
+            }
+            t.readState(buffer);
+            t.from = layer;
+            tiles[x + y * LAYER_SIZE] = t;
+        }
+        release(chunk);
+    }
+
+    /**
+     * Renders the stored tiles of all chunks.
+     */
+    void render(Graphics2D g) {
+        for (int c = stored.nextSetBit(0); c >= 0; c = stored.nextSetBit(c + 1)) {
+            forEachStored(c, (t, i) -> t.render(g));
+        }
+    }
+
+    /**
+     * Performs an action with each stored tile of a chunk, without recreating them: a tile of each type is moved
+     * from cell to cell and given the state of each stored tile, so the action shouldn't keep it.
+     *
+     * @param chunk  Chunk of the tiles.
+     * @param action Action to be performed with each tile, and its index in the tiles array.
+     */
+    void forEachStored(int chunk, ObjIntConsumer<Tile> action) {
+        ByteBuffer buffer = chunks[chunk];
+        if (buffer == null) {
+            return;
+        }
+        buffer = buffer.duplicate().order(ByteOrder.nativeOrder());
+        int start = firstCell(chunk);
+        while (buffer.hasRemaining()) {
+            int cell = buffer.getShort();
+            Tile t = flyweights.get(buffer.getShort());
+            t.posX = start % LAYER_SIZE + cell % CHUNK_SIZE;
+            t.posY = start / LAYER_SIZE + cell / CHUNK_SIZE;
+            t.readState(buffer);
+            action.accept(t, t.posX + t.posY * LAYER_SIZE);
+        }
+    }
+
+    /**
+     * Reads a stored tile without recreating it, like {@link #forEachStored(int, ObjIntConsumer)} does.
+     *
+     * @param chunk Chunk of the tile.
+     * @param i     Index of the tile in the tiles array.
+     * @return A tile of the type of the stored tile, with its state, that is reused by the next call. Null if there is
+     * no tile stored there.
+     */
+    Tile peek(int chunk, int i) {
+        ByteBuffer buffer = chunks[chunk];
+        if (buffer == null) {
+            return null;
+        }
+        buffer = buffer.duplicate().order(ByteOrder.nativeOrder());
+        int start = firstCell(chunk);
+        int target = i % LAYER_SIZE - start % LAYER_SIZE + (i / LAYER_SIZE - start / LAYER_SIZE) * CHUNK_SIZE;
+        while (buffer.hasRemaining()) {
+            int cell = buffer.getShort();
+            Tile t = flyweights.get(buffer.getShort());
+            t.readState(buffer); // Records don't have a length, so the state is read to get to the next one
+            if (cell == target) {
+                t.posX = i % LAYER_SIZE;
+                t.posY = i / LAYER_SIZE;
+                return t;
+            }
+            if (cell > target) {
+                return null; // Cells are stored in order
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Frees the buffers of all chunks, dropping their tiles.
+     *
+     * @param index Index of the layer, the cells of the dropped tiles are removed from it.
+     */
+    void dispose(TileIndex index) {
+        for (int c = stored.nextSetBit(0); c >= 0; c = stored.nextSetBit(c + 1)) {
+            forEachStored(c, index::remove);
+            release(c);
+        }
+    }
+
+    private void release(int chunk) {
+        ByteBuffer buffer = chunks[chunk];
+        chunks[chunk] = null;
+        stored.clear(chunk);
+        bytes -= buffer.capacity();
+        if (INVOKE_CLEANER != null) {
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (ReflectiveOperationException e) {
+                // Freed when it is garbage collected
+            }
+        }
+    }
+
+    /**
+     * @return Id of a tile type, or -1 if tiles of that type can't be stored.
+     */
+    private int typeId(Class<? extends Tile> type) {
+        Integer id = typeIds.get(type);
+        if (id != null) {
+            return id;
+        }
+        id = -1;
+        if (type.isAnnotationPresent(OffHeapTile.class)) {
+            Constructor<? extends Tile> constructor;
+            Tile flyweight;
+            try {
+                constructor = type.getDeclaredConstructor(int.class, int.class);
+                constructor.setAccessible(true);
+                flyweight = constructor.newInstance(0, 0);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Tile '" + type.getName() + "' is an OffHeapTile, but can't be "
+                        + "created with only its position!", e);
+            }
+            flyweight.from = layer;
+            id = types.size();
+            types.add(constructor);
+            flyweights.add(flyweight);
+        }
+        typeIds.put(type, id);
+        return id;
+    }
+
+    private static int firstCell(int chunk) {
+        return chunk % CHUNKS * CHUNK_SIZE + chunk / CHUNKS * CHUNK_SIZE * LAYER_SIZE;
+    }
+}
@@ -0,0 +1,26 @@
+package com.prinjsystems.asctlib.structures;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.nio.ByteBuffer;
+
+/**
+ * Tiles with this annotation can be stored outside of the heap by layers that do it (see {@link
+ * Layer#setOffHeap(boolean)}), while their chunk is sleeping. The tile object is dropped, and recreated when the
+ * chunk is needed again, using a constructor that receives only the position of the tile (like {@code
+ * NSilicon(int, int)}) and {@link Tile#readState(ByteBuffer)}.
+ * <p>
+ * Tiles with this annotation need to have that constructor, and to write all of their state that is not set by it in
+ * {@link Tile#writeState(ByteBuffer)}, using at most {@link #MAX_STATE_SIZE} bytes. The annotation is not inherited,
+ * since subclasses usually have more state, so each class needs to be annotated on its own.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface OffHeapTile {
+    /**
+     * Maximum number of bytes a tile can write in {@link Tile#writeState(ByteBuffer)}.
+     */
+    int MAX_STATE_SIZE = 64;
+}
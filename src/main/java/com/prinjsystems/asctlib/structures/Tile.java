@@ -3,6 +3,7 @@ package com.prinjsystems.asctlib.structures;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -146,6 +147,93 @@ public abstract class Tile implements Serializable, Comparable, Cloneable {
 
     public void setTemp(float temp) {
         this.temp = temp;
+        wake();
+        stateChanged();
+    }
+
+    /**
+     * @return If the tile is above its melting temperature.
+     */
+    public boolean isMolten() {
+        return temp > meltingTemp;
+    }
+
+    /**
+     * Tells if updating this tile would do nothing, in which case its layer may stop updating it (see {@link
+     * Layer#setChunkSleeping(boolean)}). Tiles that do something on their own in {@link #update()} need to override
+     * this to return false while they have something to do, and call {@link #wake()} when something outside makes
+     * them need updates again.
+     * <p>
+     * A tile is idle if it is not molten and it can't give heat to the air or to the tiles around it.
+     *
+     * @return If the tile is idle.
+     */
+    public boolean isIdle() {
+        if (isMolten()) {
+            return false;
+        }
+        if (temp <= 27) { // Air temperature, see #update()
+            return true;
+        }
+        // Tiles of sleeping chunks are only read, so checking this doesn't wake them up
+        return !canGiveHeatTo(from.peekTile(posX - 1, posY)) && !canGiveHeatTo(from.peekTile(posX + 1, posY))
+                && !canGiveHeatTo(from.peekTile(posX, posY - 1)) && !canGiveHeatTo(from.peekTile(posX, posY + 1));
+    }
+
+    private boolean canGiveHeatTo(Tile t) {
+        return t == null || t.getTemp() < temp;
+    }
+
+    /**
+     * Makes sure this tile will be updated in the next tick, if its layer stopped updating it because it was idle.
+     */
+    protected void wake() {
+        if (from != null) {
+            from.wakeChunk(posX, posY);
+        }
+    }
+
+    /**
+     * Tells the layer of this tile that its state changed in a way that may change how it looks, like its temperature
+     * or it being powered, so that its listeners find out (see {@link LayerListener#statesChanged(Layer,
+     * java.util.BitSet)}). Subclasses that change such state directly, instead of through the methods of this class,
+     * should call it.
+     */
+    protected void stateChanged() {
+        if (from != null) {
+            from.stateChanged(posX, posY);
+        }
+    }
+
+    /**
+     * Tells if this tile currently has state that {@link #writeState(ByteBuffer)} can't write, like references to
+     * other objects or scheduled timers. Such tiles are kept on the heap even if they are an {@link OffHeapTile}.
+     *
+     * @return If the tile needs to stay on the heap for now. False by default.
+     */
+    protected boolean hasHeapState() {
+        return false;
+    }
+
+    /**
+     * Writes the state of this tile that is not set by its constructor, so that its layer can store it outside of
+     * the heap (see {@link OffHeapTile}). Subclasses with more state should call this first, and then write their
+     * own state.
+     *
+     * @param out Buffer to write the state to.
+     */
+    protected void writeState(ByteBuffer out) {
+        out.putFloat(temp); // Molten tiles are never stored, so their viscosity counters aren't needed
+    }
+
+    /**
+     * Reads the state written by {@link #writeState(ByteBuffer)}, right after the tile was created with its
+     * position.
+     *
+     * @param in Buffer to read the state from.
+     */
+    protected void readState(ByteBuffer in) {
+        temp = in.getFloat();
     }
 
     /**
@@ -158,6 +246,8 @@ public abstract class Tile implements Serializable, Comparable, Cloneable {
     /**
      * Will update the tile's current status. In this base class a tick will care of transferring heat to surrounding
      * tiles or air, and process gravity if the tile is in a molten state.
+     * <p>
+     * Heat is only transferred in the ticks its layer chooses (see {@link Layer#setThermalInterval(int)}).
      */
     public void update() {
         if (temp > meltingTemp) { // Is molten
@@ -185,17 +275,49 @@ public abstract class Tile implements Serializable, Comparable, Cloneable {
             }
         }
 
-        // Irradiate heat
-        Tile[] tilesAround = from.getTilesAround(posX, posY);
-        for (Tile t : tilesAround) {
-            // Since the resistances would be so low, I decided to arbitrarily choose a "irradiation ratio" for
-            // each material
-            if (t == null && temp > 27) { // Let's make so that air cannot heat up and is at 27C
-                temp -= temp * airIrradiationRatio;
-            } else if (t != null && t.getTemp() < temp && temp > 27) {
-                t.setTemp(t.getTemp() + temp * irradiationRatio);
-                temp -= temp * irradiationRatio;
-            }
+        int steps = from.getThermalSteps();
+        if (steps > 0) {
+            irradiate(steps);
+        }
+    }
+
+    /**
+     * Irradiates heat to the tiles around and to the air, as much as it would be irradiated in a number of ticks.
+     *
+     * @param steps Number of ticks since heat was last irradiated.
+     */
+    private void irradiate(int steps) {
+        float oldTemp = temp;
+        // Irradiating a fraction r of the heat each tick leaves (1 - r)^steps of it after that many ticks
+        float irradiationRatio = steps == 1 ? this.irradiationRatio
+                : 1 - (float) Math.pow(1 - this.irradiationRatio, steps);
+        float airIrradiationRatio = steps == 1 ? this.airIrradiationRatio
+                : 1 - (float) Math.pow(1 - this.airIrradiationRatio, steps);
+
+        irradiate(posX - 1, posY, irradiationRatio, airIrradiationRatio);
+        irradiate(posX + 1, posY, irradiationRatio, airIrradiationRatio);
+        irradiate(posX, posY - 1, irradiationRatio, airIrradiationRatio);
+        irradiate(posX, posY + 1, irradiationRatio, airIrradiationRatio);
+        if (temp < oldTemp) {
+            from.wakeChunksAround(posX, posY); // Tiles around may be able to give heat to this one now
+            stateChanged();
+        }
+    }
+
+    /**
+     * Irradiates heat to the tile at a position, or to the air if there is none.
+     */
+    private void irradiate(int x, int y, float irradiationRatio, float airIrradiationRatio) {
+        // Tiles of sleeping chunks are only read, and loaded back when they actually get heat
+        Tile t = from.peekTile(x, y);
+        // Since the resistances would be so low, I decided to arbitrarily choose a "irradiation ratio" for
+        // each material
+        if (t == null && temp > 27) { // Let's make so that air cannot heat up and is at 27C
+            temp -= temp * airIrradiationRatio;
+        } else if (t != null && t.getTemp() < temp && temp > 27) {
+            t = from.getTile(x, y);
+            t.setTemp(t.getTemp() + temp * irradiationRatio);
+            temp -= temp * irradiationRatio;
         }
     }
 
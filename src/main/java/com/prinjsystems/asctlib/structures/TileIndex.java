@@ -0,0 +1,64 @@
+package com.prinjsystems.asctlib.structures;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of which cells of a {@link Layer} are occupied, and by which type of tile. There is one occupancy
+ * bitset for each tile class present in the layer, plus one for all the occupied cells, so finding all the tiles of a
+ * type (or all the tiles at all) doesn't need to go through the millions of empty cells of the layer.
+ * <p>
+ * Bits are indexed the same way as the tiles array of the layer, that is {@code x + y * LAYER_SIZE}.
+ */
+class TileIndex {
+    private final BitSet occupied;
+    private final Map<Class<?>, BitSet> byType;
+
+    TileIndex() {
+        occupied = new BitSet();
+        byType = new HashMap<>();
+    }
+
+    void add(Tile tile, int index) {
+        occupied.set(index);
+        byType.computeIfAbsent(tile.getClass(), c -> new BitSet()).set(index);
+    }
+
+    void remove(Tile tile, int index) {
+        occupied.clear(index);
+        BitSet bits = byType.get(tile.getClass());
+        if (bits != null) {
+            bits.clear(index);
+        }
+    }
+
+    /**
+     * @return Bitset of all the occupied cells. Should not be modified.
+     */
+    BitSet getOccupied() {
+        return occupied;
+    }
+
+    /**
+     * Will return the bitsets of all the tile classes that are the same or a subclass of the specified type.
+     *
+     * @param type Type of the tiles.
+     * @return Bitsets of the matching tile classes. Should not be modified.
+     */
+    List<BitSet> getMatching(Class<?> type) {
+        List<BitSet> result = new ArrayList<>();
+        if (type == Tile.class) {
+            result.add(occupied);
+            return result;
+        }
+        for (Map.Entry<Class<?>, BitSet> entry : byType.entrySet()) {
+            if (type.isAssignableFrom(entry.getKey()) && !entry.getValue().isEmpty()) {
+                result.add(entry.getValue());
+            }
+        }
+        return result;
+    }
+}
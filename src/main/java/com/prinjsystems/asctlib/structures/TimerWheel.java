@@ -0,0 +1,232 @@
+package com.prinjsystems.asctlib.structures;
+
+/**
+ * Hierarchical timing wheel, used by tiles to run something after a number of ticks, instead of counting ticks
+ * themselves every update. Scheduling and cancelling a timer cost O(1), and advancing the wheel only touches the
+ * timers that expire (and once in a while the timers that are far in the future, which are moved closer to
+ * expiring).
+ * <p>
+ * The wheel has {@value #LEVELS} levels of {@value #SLOTS} slots. Level 0 has one slot per tick, level 1 one slot
+ * per {@value #SLOTS} ticks, and so on. Timers even further in the future than the last level are kept in an
+ * overflow list.
+ * <p>
+ * Each {@link Layer} has its own wheel (see {@link Layer#getTimers()}), that is advanced right before its tiles are
+ * updated.
+ */
+public class TimerWheel {
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private final Timer[][] slots; // Each slot is the sentinel of a circular list
+    private final Timer overflow;
+    private long tick;
+    private int size;
+
+    public TimerWheel() {
+        slots = new Timer[LEVELS][SLOTS];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                slots[level][slot] = new Sentinel();
+            }
+        }
+        overflow = new Sentinel();
+    }
+
+    /**
+     * @return Last tick the wheel was advanced to.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * @return How many timers are scheduled.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Will schedule a timer to expire at a tick. If the timer was already scheduled, it is rescheduled. If the tick
+     * already passed (or is the current tick), the timer expires right away.
+     *
+     * @param timer Timer to schedule.
+     * @param at    Tick when the timer expires.
+     */
+    public void schedule(Timer timer, long at) {
+        if (timer.wheel != null) {
+            timer.wheel.cancel(timer);
+        }
+        timer.at = at;
+        timer.wheel = this;
+        if (at <= tick) {
+            timer.wheel = null;
+            timer.expire();
+            return;
+        }
+        size++;
+        insert(timer);
+    }
+
+    /**
+     * Will cancel a timer, if it is scheduled in this wheel.
+     *
+     * @param timer Timer to cancel.
+     */
+    public void cancel(Timer timer) {
+        if (timer.wheel == this && timer.next != null) {
+            unlink(timer);
+            timer.wheel = null;
+            size--;
+        }
+    }
+
+    /**
+     * Advances the wheel to a tick, expiring all the timers scheduled up to it. Should be called for every tick, in
+     * order.
+     *
+     * @param tick Tick to advance to.
+     */
+    public void advance(long tick) {
+        while (this.tick < tick) {
+            this.tick++;
+            if (size > 0) {
+                cascade();
+                expireSlot(slots[0][(int) (this.tick & MASK)]);
+            }
+        }
+    }
+
+    private void cascade() {
+        if ((tick & MASK) != 0) {
+            return;
+        }
+        // Find the highest level that wrapped around, and move its timers (and those of the levels below) down
+        int level = 1;
+        while (level < LEVELS - 1 && (tick & ((1L << (BITS * (level + 1))) - 1)) == 0) {
+            level++;
+        }
+        if (level == LEVELS - 1 && (tick & ((1L << (BITS * LEVELS)) - 1)) == 0) {
+            reinsert(overflow);
+        }
+        for (; level >= 1; level--) {
+            reinsert(slots[level][(int) ((tick >>> (BITS * level)) & MASK)]);
+        }
+    }
+
+    private void reinsert(Timer sentinel) {
+        Timer first = detach(sentinel);
+        while (first != null) {
+            Timer next = first.next;
+            first.next = null;
+            first.prev = null;
+            insert(first);
+            first = next;
+        }
+    }
+
+    private void expireSlot(Timer sentinel) {
+        Timer first = detach(sentinel);
+        while (first != null) {
+            Timer next = first.next;
+            first.next = null;
+            first.prev = null;
+            if (first.at <= tick) {
+                first.wheel = null;
+                size--;
+                first.expire();
+            } else {
+                insert(first);
+            }
+            first = next;
+        }
+    }
+
+    /**
+     * Removes all the timers from a slot.
+     *
+     * @return First timer of the slot, the others can be reached with {@link Timer#next} until null.
+     */
+    private Timer detach(Timer sentinel) {
+        if (sentinel.next == sentinel) {
+            return null;
+        }
+        Timer first = sentinel.next;
+        sentinel.prev.next = null;
+        sentinel.next = sentinel;
+        sentinel.prev = sentinel;
+        return first;
+    }
+
+    private void insert(Timer timer) {
+        long delta = timer.at - tick;
+        Timer sentinel = overflow;
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < (1L << (BITS * (level + 1)))) {
+                sentinel = slots[level][(int) ((timer.at >>> (BITS * level)) & MASK)];
+                break;
+            }
+        }
+        timer.prev = sentinel.prev;
+        timer.next = sentinel;
+        sentinel.prev.next = timer;
+        sentinel.prev = timer;
+    }
+
+    private void unlink(Timer timer) {
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.next = null;
+        timer.prev = null;
+    }
+
+    /**
+     * Something that will happen after a number of ticks. A timer can be scheduled in only one wheel at a time, and
+     * can be scheduled again after it expires.
+     */
+    public abstract static class Timer {
+        private Timer prev;
+        private Timer next;
+        private long at;
+        private TimerWheel wheel;
+
+        /**
+         * @return If the timer is scheduled and didn't expire yet.
+         */
+        public boolean isScheduled() {
+            return wheel != null;
+        }
+
+        /**
+         * @return Wheel the timer is scheduled in, or null if it is not scheduled.
+         */
+        public TimerWheel getWheel() {
+            return wheel;
+        }
+
+        /**
+         * @return Tick when the timer expires (or expired).
+         */
+        public long getExpiresAt() {
+            return at;
+        }
+
+        /**
+         * Called when the timer expires.
+         */
+        protected abstract void expire();
+    }
+
+    private static class Sentinel extends Timer {
+        Sentinel() {
+            super.prev = this;
+            super.next = this;
+        }
+
+        @Override
+        protected void expire() {
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.prinjsystems.asctlib.structures;
+
+import com.prinjsystems.asctlib.circuits.Net;
+import com.prinjsystems.asctlib.structures.conductors.ConductorTile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static com.prinjsystems.asctlib.structures.Layer.LAYER_SIZE;
+
+/**
+ * Keeps track of all the vias of a {@link GameMap}, so they can be found without going through every conductor of
+ * every layer. Created by the map itself (see {@link GameMap#getViaIndex()}).
+ * <p>
+ * A via is a {@link ConductorTile} that is connected to another tile (see {@link
+ * ConductorTile#setConnectedTo(ActionTile)}). When both sides are conductors each side is a via of its own, so a
+ * link between two conductors is found in both layers. The index listens to the layers of the map, so it's updated
+ * whenever a via is linked, unlinked, removed or moved, and picks up layers added to or removed from the map the next
+ * time it's used.
+ */
+public class ViaIndex implements LayerListener {
+    private final GameMap map;
+    private final Map<Layer, NavigableMap<Integer, ConductorTile>> layers; // Vias of each layer, by cell
+
+    ViaIndex(GameMap map) {
+        this.map = map;
+        layers = new IdentityHashMap<>();
+    }
+
+    /**
+     * @return All the vias of the map, layer by layer (in the order of the map) and row by row.
+     */
+    public List<ConductorTile> getVias() {
+        sync();
+        List<ConductorTile> result = new ArrayList<>();
+        for (Layer layer : map.getLayers()) {
+            result.addAll(layers.get(layer).values());
+        }
+        return result;
+    }
+
+    /**
+     * @param layer Layer of the map.
+     * @return All the vias of a layer, row by row. Empty if the layer is not part of the map.
+     */
+    public List<ConductorTile> getVias(Layer layer) {
+        sync();
+        NavigableMap<Integer, ConductorTile> vias = layers.get(layer);
+        return vias == null ? Collections.emptyList() : new ArrayList<>(vias.values());
+    }
+
+    /**
+     * Will return the vias of a layer inside a rectangle.
+     *
+     * @param layer  Layer of the map.
+     * @param x      X position of the top left corner of the rectangle.
+     * @param y      Y position of the top left corner of the rectangle.
+     * @param width  Width of the rectangle.
+     * @param height Height of the rectangle.
+     * @return Vias inside the rectangle, row by row.
+     */
+    public List<ConductorTile> getVias(Layer layer, int x, int y, int width, int height) {
+        sync();
+        List<ConductorTile> result = new ArrayList<>();
+        NavigableMap<Integer, ConductorTile> vias = layers.get(layer);
+        if (vias == null) {
+            return result;
+        }
+        int minX = Math.max(0, x);
+        int maxX = Math.min(LAYER_SIZE, x + width);
+        for (int row = Math.max(0, y); row < Math.min(LAYER_SIZE, y + height) && minX < maxX; row++) {
+            result.addAll(vias.subMap(minX + row * LAYER_SIZE, maxX + row * LAYER_SIZE).values());
+        }
+        return result;
+    }
+
+    /**
+     * Will return the stack of vias at a position, that is, the vias at that position in each layer.
+     *
+     * @param x X position.
+     * @param y Y position.
+     * @return Vias at the position, in the order of the layers of the map.
+     */
+    public List<ConductorTile> getViasAt(int x, int y) {
+        sync();
+        List<ConductorTile> result = new ArrayList<>();
+        for (Layer layer : map.getLayers()) {
+            ConductorTile via = layers.get(layer).get(x + y * LAYER_SIZE);
+            if (via != null) {
+                result.add(via);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param layer Layer of the map.
+     * @return Layers that the vias of a layer are connected to, in the order they are first found. Only includes the
+     * layer itself if it has vias connected to itself.
+     */
+    public Set<Layer> getLinkedLayers(Layer layer) {
+        return linkedLayers(getVias(layer));
+    }
+
+    /**
+     * Will return which layers a net touches, that is, the layer of the net plus the layers its vias are connected
+     * to.
+     *
+     * @param net Net to check.
+     * @return Layers the net touches, the layer of the net being the first one.
+     */
+    public Set<Layer> getLayersTouched(Net net) {
+        List<ConductorTile> vias = getVias(net.getLayer());
+        vias.removeIf(via -> !net.contains(via));
+        Set<Layer> result = new LinkedHashSet<>();
+        result.add(net.getLayer());
+        result.addAll(linkedLayers(vias));
+        return result;
+    }
+
+    /**
+     * @return How many vias there are in the map.
+     */
+    public int size() {
+        sync();
+        int size = 0;
+        for (NavigableMap<Integer, ConductorTile> vias : layers.values()) {
+            size += vias.size();
+        }
+        return size;
+    }
+
+    /**
+     * Unlinks all the vias going to or from a layer, on both sides.
+     *
+     * @param layer Layer to unlink.
+     */
+    void unlink(Layer layer) {
+        for (ConductorTile via : getVias()) {
+            ActionTile connectedTo = via.getConnectedTo();
+            if (connectedTo == null) {
+                continue; // The other side of a link that was already unlinked
+            }
+            if (via.getLayer() != layer && connectedTo.getLayer() != layer) {
+                continue;
+            }
+            if (connectedTo instanceof ConductorTile && ((ConductorTile) connectedTo).getConnectedTo() == via) {
+                ((ConductorTile) connectedTo).setConnectedTo(null);
+            }
+            via.setConnectedTo(null);
+        }
+    }
+
+    @Override
+    public void tilesChanged(Layer layer, int x, int y, int width, int height) {
+        NavigableMap<Integer, ConductorTile> vias = layers.get(layer);
+        if (vias == null) {
+            return;
+        }
+        int minX = Math.max(0, x);
+        int maxX = Math.min(LAYER_SIZE, x + width);
+        for (int row = Math.max(0, y); row < Math.min(LAYER_SIZE, y + height) && minX < maxX; row++) {
+            vias.subMap(minX + row * LAYER_SIZE, maxX + row * LAYER_SIZE).clear();
+        }
+        layer.forEachTile(ConductorTile.class, x, y, width, height, t -> add(vias, t));
+    }
+
+    /**
+     * Starts listening to the layers that were added to the map, and forgets the ones that were removed.
+     */
+    private void sync() {
+        List<Layer> current = map.getLayers();
+        if (layers.size() == current.size()) {
+            boolean same = true;
+            for (Layer layer : current) {
+                if (!layers.containsKey(layer)) {
+                    same = false;
+                    break;
+                }
+            }
+            if (same) {
+                return;
+            }
+        }
+        Set<Layer> present = Collections.newSetFromMap(new IdentityHashMap<>());
+        present.addAll(current);
+        for (Iterator<Layer> it = layers.keySet().iterator(); it.hasNext(); ) {
+            Layer layer = it.next();
+            if (!present.contains(layer)) {
+                layer.removeListener(this);
+                it.remove();
+            }
+        }
+        for (Layer layer : current) {
+            if (!layers.containsKey(layer)) {
+                NavigableMap<Integer, ConductorTile> vias = new TreeMap<>();
+                layer.forEachTile(ConductorTile.class, 0, 0, LAYER_SIZE, LAYER_SIZE, t -> add(vias, t));
+                layers.put(layer, vias);
+                layer.addListener(this);
+            }
+        }
+    }
+
+    private static void add(NavigableMap<Integer, ConductorTile> vias, ConductorTile tile) {
+        if (tile.getConnectedTo() != null) {
+            vias.put(tile.getPosX() + tile.getPosY() * LAYER_SIZE, tile);
+        }
+    }
+
+    private static Set<Layer> linkedLayers(List<ConductorTile> vias) {
+        Set<Layer> result = new LinkedHashSet<>();
+        for (ConductorTile via : vias) {
+            Layer other = via.getConnectedTo().getLayer();
+            if (other != null) {
+                result.add(other);
+            }
+        }
+        return result;
+    }
+}
@@ -1,5 +1,6 @@
 package com.prinjsystems.asctlib.structures.conductors;
 
+import com.prinjsystems.asctlib.circuits.Net;
 import com.prinjsystems.asctlib.structures.ActionTile;
 import com.prinjsystems.asctlib.structures.Tile;
 import java.awt.Color;
@@ -18,6 +19,7 @@ public abstract class ConductorTile extends ActionTile {
     public static final Color POWERED_COLOR = new Color(255, 191, 0);
 
     private ActionTile connectedTo; // If connectedTo is not null then the conductor/wire is a via
+    private transient Net net; // Compiled net this tile is part of, if circuit compilation is enabled
 
     protected ConductorTile(int posX, int posY, Color color, String name, String shortenedName) {
         super(posX, posY, color, name, shortenedName);
@@ -31,6 +33,9 @@ public abstract class ConductorTile extends ActionTile {
                 if (!(tile instanceof ActionTile)) {
                     continue;
                 }
+                if (net != null && tile instanceof ConductorTile && ((ConductorTile) tile).net == net) {
+                    continue; // The net itself takes care of powering its tiles
+                }
                 if (isValid(tile)) {
                     spread(tile);
                 }
@@ -39,12 +44,30 @@ public abstract class ConductorTile extends ActionTile {
                 spread(connectedTo);
             }
             postSpread();
+            stateChanged();
+        }
+    }
+
+    @Override
+    public void trySetPowered(boolean powered, Tile source) {
+        boolean couldReceivePower = canReceivePower;
+        super.trySetPowered(powered, source);
+        if (net != null && couldReceivePower && this.powered) {
+            net.powered(this);
+        }
+    }
+
+    @Override
+    public void update() {
+        super.update();
+        if (net != null && isMolten()) {
+            net.melted();
         }
     }
 
     @Override
     public Color getColor() {
-        return powered ? POWERED_COLOR : color;
+        return powered || (net != null && net.isLit()) ? POWERED_COLOR : color;
     }
 
     @Override
@@ -56,6 +79,11 @@ public abstract class ConductorTile extends ActionTile {
         }
     }
 
+    @Override
+    protected boolean hasHeapState() {
+        return super.hasHeapState() || connectedTo != null || net != null;
+    }
+
     /**
      * Used to determine if the conductor should try to spread power to a tile in contact with it.
      *
@@ -66,6 +94,29 @@ public abstract class ConductorTile extends ActionTile {
         return true;
     }
 
+    /**
+     * Used by the circuit compiler to determine if this tile can be simulated as part of a net, instead of one tile
+     * at a time. Tiles that change how power is received or spread (other than through {@link #isValid(Tile)})
+     * should return false.
+     *
+     * @return If this tile can be compiled. True by default.
+     */
+    public boolean isCompilable() {
+        return true;
+    }
+
+    /**
+     * Used by the circuit compiler to determine if this tile and another one are part of the same net, that is, if
+     * they are both compilable, of the same type, and spread power to each other.
+     *
+     * @param other Tile in contact with this one.
+     * @return If both tiles can be compiled into the same net.
+     */
+    public boolean canCompileWith(ConductorTile other) {
+        return other.getClass() == getClass() && isCompilable() && other.isCompilable() && isValid(other)
+                && other.isValid(this);
+    }
+
     /**
      * Will spread this tile's current powered state to another tile.
      *
@@ -93,12 +144,29 @@ public abstract class ConductorTile extends ActionTile {
             if (connectedTo instanceof ConductorTile) {
                 ((ConductorTile) connectedTo).setConnectedTo0(this);
             }
+            connectionChanged();
         } else if (connectedTo == null) {
             this.connectedTo = null;
+            connectionChanged();
         }
     }
 
     private void setConnectedTo0(ActionTile connectedTo) {
         this.connectedTo = connectedTo;
+        connectionChanged();
+    }
+
+    private void connectionChanged() {
+        if (from != null) {
+            from.tilesChanged(posX, posY, 1, 1);
+        }
+    }
+
+    public Net getNet() {
+        return net;
+    }
+
+    public void setNet(Net net) {
+        this.net = net;
     }
 }
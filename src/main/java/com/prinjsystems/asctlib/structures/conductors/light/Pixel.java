@@ -1,10 +1,14 @@
 package com.prinjsystems.asctlib.structures.conductors.light;
 
 import com.prinjsystems.asctlib.structures.ActionTile;
+import com.prinjsystems.asctlib.structures.Layer;
 import com.prinjsystems.asctlib.structures.Tile;
 import com.prinjsystems.asctlib.structures.conductors.semiconductors.NSilicon;
 import com.prinjsystems.asctlib.structures.conductors.semiconductors.PSilicon;
 import java.awt.Color;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
 
 // Because of problems with what a pixel should and should not be able to do, making it a ConductorTile is too much
 // of a hassle, so I decided to copy the ConductorTile #tick() procedure and just adjust it here.
@@ -12,24 +16,68 @@ import java.awt.Color;
 /**
  * A Pixel is a two state tile, that can be on or off. If the pixel is powered, than it will be rendered with its
  * default color ({@link Tile}'s property), if not it will be rendered using its own property, offColor.
+ * <p>
+ * Pixels of the same color that are in contact with each other form a {@link PixelGroup}, and turning any of them on
+ * or off turns the whole group on or off in the same tick. If the layer is in wavefront mode (see {@link
+ * Layer#setPixelWavefront(boolean)}) the state spreads to one more pixel around each tick instead.
  */
 public abstract class Pixel extends ActionTile {
     private static final long serialVersionUID = 6464774072289540505L;
 
     private boolean spreading = true;
     private Color offColor;
+    transient PixelGroup group; // Null in wavefront mode
 
     public Pixel(int posX, int posY, Color color, Color offColor, String name, String shortenedName) {
         super(posX, posY, color, name, shortenedName);
         this.offColor = offColor;
     }
 
+    /**
+     * @return If the pixel will spread its state to the pixels around it in the next tick. Always false if the pixel
+     * is part of a group.
+     */
     public boolean isSpreading() {
-        return spreading;
+        return spreading && group == null;
+    }
+
+    /**
+     * @return Group this pixel is part of, or null if its layer is in wavefront mode.
+     */
+    public PixelGroup getGroup() {
+        return group;
+    }
+
+    @Override
+    public boolean isActive() {
+        // Pixels only do something in their tick when spreading, but powered pixels tick anyway, so that they can
+        // spread in the same tick if a pixel that ticks before them switches them
+        return group == null && (super.isActive() || spreading);
+    }
+
+    @Override
+    public boolean isPowered() {
+        return group != null ? group.isPowered() : powered;
+    }
+
+    /**
+     * Stops being part of a group, keeping its state.
+     */
+    void leaveGroup() {
+        powered = group.isPowered();
+        group = null;
     }
 
     @Override
     public void trySetPowered(boolean powered, Tile source) {
+        if (group != null) {
+            boolean state = source == null ? powered : source instanceof PSilicon;
+            if (canReceivePower && (source == null || source instanceof PSilicon || source instanceof NSilicon)) {
+                super.trySetPowered(state, source);
+                group.setPowered(from, state);
+            }
+            return;
+        }
         boolean oldPowered = isPowered();
         if (source != null) {
             if (source instanceof PSilicon) {
@@ -42,6 +90,7 @@ public abstract class Pixel extends ActionTile {
         }
         if (oldPowered != powered) {
             spreading = true;
+            wake();
         }
     }
 
@@ -61,8 +110,32 @@ public abstract class Pixel extends ActionTile {
         }
     }
 
+    @Override
+    protected boolean hasHeapState() {
+        return super.hasHeapState() || group != null;
+    }
+
+    @Override
+    protected void writeState(ByteBuffer out) {
+        super.writeState(out);
+        out.put((byte) (spreading ? 1 : 0));
+    }
+
+    @Override
+    protected void readState(ByteBuffer in) {
+        super.readState(in);
+        spreading = in.get() != 0;
+    }
+
     @Override
     public Color getColor() {
-        return powered ? color : offColor;
+        return isPowered() ? color : offColor;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (group != null) {
+            powered = group.isPowered(); // Groups are not saved, they are found again when the layer is loaded
+        }
+        out.defaultWriteObject();
     }
 }
@@ -0,0 +1,198 @@
+package com.prinjsystems.asctlib.structures.conductors.light;
+
+import com.prinjsystems.asctlib.structures.Layer;
+import com.prinjsystems.asctlib.structures.Tile;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A group of pixels of the same color, in contact with each other. All the pixels of a group are always on or off
+ * together, so turning a whole display on or off only changes the state of its group, no matter how many pixels it
+ * has.
+ * <p>
+ * Groups are kept as a union-find (disjoint set) structure: each pixel points to a group, and groups that are merged
+ * point to the group they were merged into, so finding the actual group of a pixel takes almost constant time.
+ * Placing a pixel merges the groups around it, which is also almost constant time. Removing a pixel can split its
+ * group in up to four, and that can't be done with union-find, so the groups around it are found again with a flood
+ * fill, which takes as long as the size of those groups.
+ * <p>
+ * Groups are maintained by the layers themselves, unless the layer is in wavefront mode (see
+ * {@link Layer#setPixelWavefront(boolean)}).
+ */
+public final class PixelGroup {
+    private PixelGroup parent;
+    private int size;
+    private boolean powered;
+    // Rectangle containing all the pixels of the group. It may be larger than needed after pixels are removed.
+    private int minX, minY, maxX, maxY;
+
+    private PixelGroup(Pixel pixel) {
+        parent = this;
+        size = 1;
+        powered = pixel.isPowered();
+        minX = maxX = pixel.getPosX();
+        minY = maxY = pixel.getPosY();
+    }
+
+    /**
+     * @return If the pixels of this group are on.
+     */
+    public boolean isPowered() {
+        return find().powered;
+    }
+
+    /**
+     * Turns the group on or off. If that changes its state, the listeners of the layer are notified that its pixels
+     * were repainted.
+     */
+    void setPowered(Layer layer, boolean powered) {
+        PixelGroup root = find();
+        if (root.powered != powered) {
+            root.powered = powered;
+            layer.tilesRepainted(root.minX, root.minY, root.maxX - root.minX + 1, root.maxY - root.minY + 1);
+        }
+    }
+
+    /**
+     * @return Number of pixels in this group.
+     */
+    public int size() {
+        return find().size;
+    }
+
+    /**
+     * @return The group this group was merged into, or itself if it was never merged.
+     */
+    PixelGroup find() {
+        PixelGroup g = this;
+        while (g.parent != g) {
+            g.parent = g.parent.parent; // Path halving, keeps the chains short without recursion
+            g = g.parent;
+        }
+        return g;
+    }
+
+    /**
+     * Merges two groups. The merged group keeps the state of the largest of them (or of the first one if they have
+     * the same size).
+     *
+     * @return The merged group.
+     */
+    private static PixelGroup union(PixelGroup a, PixelGroup b) {
+        a = a.find();
+        b = b.find();
+        if (a == b) {
+            return a;
+        }
+        PixelGroup root = a.size >= b.size ? a : b;
+        PixelGroup child = root == a ? b : a;
+        child.parent = root;
+        root.size += child.size;
+        root.minX = Math.min(root.minX, child.minX);
+        root.minY = Math.min(root.minY, child.minY);
+        root.maxX = Math.max(root.maxX, child.maxX);
+        root.maxY = Math.max(root.maxY, child.maxY);
+        return root;
+    }
+
+    /**
+     * Adds a pixel to the groups around it, merging them if there is more than one. If there are none, it gets a
+     * group of its own. The pixel should already be in its layer.
+     * <p>
+     * Called by the layer when a pixel is placed.
+     *
+     * @param pixel Pixel that was placed.
+     */
+    public static void attach(Pixel pixel) {
+        if (pixel.group != null) {
+            return;
+        }
+        PixelGroup group = new PixelGroup(pixel);
+        for (Tile t : pixel.getLayer().getTilesAround(pixel.getPosX(), pixel.getPosY())) {
+            if (isSameGroup(pixel, t)) {
+                group = union(((Pixel) t).group, group); // The pixel takes the state of the group it joins
+            }
+        }
+        pixel.group = group;
+    }
+
+    /**
+     * Removes a pixel from its group. The pixel keeps the state of its group, and the pixels around it are split
+     * into new groups if the removed pixel was the only thing connecting them.
+     * <p>
+     * Called by the layer right before a pixel is removed or moved.
+     *
+     * @param pixel Pixel that will be removed.
+     */
+    public static void detach(Pixel pixel) {
+        if (pixel.group == null) {
+            return;
+        }
+        PixelGroup old = pixel.group.find();
+        pixel.leaveGroup();
+
+        Tile[] around = pixel.getLayer().getTilesAround(pixel.getPosX(), pixel.getPosY());
+        int neighbours = 0;
+        for (Tile t : around) {
+            if (isSameGroup(pixel, t)) {
+                neighbours++;
+            }
+        }
+        if (neighbours <= 1) {
+            old.size--; // The group can't have been split
+            return;
+        }
+        // Already regrouped pixels point to their new groups, so each part is only filled once
+        for (Tile t : around) {
+            if (isSameGroup(pixel, t) && ((Pixel) t).group.find() == old) {
+                regroup((Pixel) t);
+            }
+        }
+    }
+
+    /**
+     * Removes all the pixels of a layer from their groups, keeping their states. Much faster than detaching them one
+     * by one, since nothing needs to be regrouped.
+     *
+     * @param layer Layer whose pixels will leave their groups.
+     */
+    public static void detachAll(Layer layer) {
+        layer.forEachTile(Pixel.class, 0, 0, Layer.LAYER_SIZE, Layer.LAYER_SIZE, p -> {
+            if (p.group != null) {
+                p.leaveGroup();
+            }
+        });
+    }
+
+    private static void regroup(Pixel start) {
+        PixelGroup group = new PixelGroup(start); // The pixel still has the state of its old group
+        group.size = 0;
+        Layer layer = start.getLayer();
+        Deque<Pixel> queue = new ArrayDeque<>();
+        start.group = group;
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            Pixel p = queue.poll();
+            group.size++;
+            group.minX = Math.min(group.minX, p.getPosX());
+            group.minY = Math.min(group.minY, p.getPosY());
+            group.maxX = Math.max(group.maxX, p.getPosX());
+            group.maxY = Math.max(group.maxY, p.getPosY());
+            for (Tile t : layer.getTilesAround(p.getPosX(), p.getPosY())) {
+                if (isSameGroup(p, t) && ((Pixel) t).group.find() != group) {
+                    ((Pixel) t).group = group;
+                    queue.add((Pixel) t);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return If a tile is a pixel that belongs (or should belong) to the same group as a pixel. Pixels without a
+     * group are being removed, and are ignored.
+     */
+    private static boolean isSameGroup(Pixel pixel, Tile tile) {
+        return tile instanceof Pixel && ((Pixel) tile).group != null
+                && tile.getActualColor().equals(pixel.getActualColor());
+    }
+}
@@ -33,6 +33,12 @@ public abstract class LogicGate extends Transistor {
         conductiveFor = 0;
     }
 
+    @Override
+    protected boolean conductiveExpires() {
+        // The counter is reset every update, so it only reaches the delay if the delay is a single tick
+        return conductiveDelay == 1;
+    }
+
     @Override
     protected boolean isValid(Tile tile) {
         return !(tile instanceof NSilicon);
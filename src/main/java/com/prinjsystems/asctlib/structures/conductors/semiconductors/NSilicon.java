@@ -1,11 +1,13 @@
 package com.prinjsystems.asctlib.structures.conductors.semiconductors;
 
 import com.prinjsystems.asctlib.PlaceableTile;
+import com.prinjsystems.asctlib.structures.OffHeapTile;
 import com.prinjsystems.asctlib.structures.Tile;
 import com.prinjsystems.asctlib.structures.conductors.ConductorTile;
 import java.awt.Color;
 
 @PlaceableTile("logic")
+@OffHeapTile
 public class NSilicon extends ConductorTile {
     private static final long serialVersionUID = -649556609668628613L;
 
@@ -1,18 +1,29 @@
 package com.prinjsystems.asctlib.structures.conductors.semiconductors;
 
 import com.prinjsystems.asctlib.PlaceableTile;
+import com.prinjsystems.asctlib.structures.OffHeapTile;
 import com.prinjsystems.asctlib.structures.Tile;
+import com.prinjsystems.asctlib.structures.TimerWheel;
 import com.prinjsystems.asctlib.structures.conductors.ConductorTile;
 import java.awt.Color;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
 
 @PlaceableTile("logic")
+@OffHeapTile
 public class Transistor extends ConductorTile {
     private static final long serialVersionUID = 3056763776572443061L;
 
     protected boolean conductive;
     protected int conductiveDelay = 4;
     protected Color conductiveColor;
+    /**
+     * Counts how long the transistor has been conductive. Like {@link #unpoweredFor}, it is not incremented every
+     * tick, a timer is scheduled instead, so it is only up to date when the transistor stops being conductive.
+     */
     protected int conductiveFor;
+    private transient TimerWheel.Timer expiry;
 
     public Transistor(int posX, int posY) {
         super(posX, posY, new Color(103, 75, 120), "Transistor", "TRST");
@@ -26,10 +37,15 @@ public class Transistor extends ConductorTile {
 
     @Override
     public void trySetPowered(boolean powered, Tile source) {
+        wake();
         if (source != null && canReceivePower) {
             if (source instanceof NSilicon) {
                 conductive = true;
                 conductiveFor = 0;
+                stateChanged();
+                if (expiry != null && expiry.isScheduled()) {
+                    expiry.getWheel().cancel(expiry); // Rescheduled in the next update
+                }
             } else if (source instanceof PSilicon && conductive) {
                 super.trySetPowered(true, null);
             }
@@ -41,12 +57,61 @@ public class Transistor extends ConductorTile {
     @Override
     public void update() {
         super.update();
-        if (conductive) {
-            if (++conductiveFor == conductiveDelay) {
-                canReceivePower = true;
-                conductive = false;
-            }
+        if (conductive && conductiveExpires() && (expiry == null || expiry.getWheel() != from.getTimers())) {
+            scheduleExpiry();
+        }
+    }
+
+    @Override
+    public boolean isIdle() {
+        return super.isIdle()
+                && (!conductive || !conductiveExpires() || (expiry != null && expiry.getWheel() == from.getTimers()));
+    }
+
+    private void scheduleExpiry() {
+        if (expiry == null) {
+            expiry = new TimerWheel.Timer() {
+                @Override
+                protected void expire() {
+                    conductive = false;
+                    conductiveFor = conductiveDelay;
+                    allowPower();
+                    stateChanged();
+                }
+            };
+        } else if (expiry.isScheduled()) {
+            // The transistor was moved from another layer
+            conductiveFor = conductiveDelay - (int) (expiry.getExpiresAt() - expiry.getWheel().getTick());
+            expiry.getWheel().cancel(expiry);
         }
+        TimerWheel timers = from.getTimers();
+        timers.schedule(expiry, timers.getTick() + conductiveDelay - conductiveFor - 1);
+    }
+
+    /**
+     * @return If the transistor stops being conductive once {@link #conductiveDelay} runs out. True by default.
+     */
+    protected boolean conductiveExpires() {
+        return true;
+    }
+
+    @Override
+    protected boolean hasHeapState() {
+        return super.hasHeapState() || (expiry != null && expiry.isScheduled());
+    }
+
+    @Override
+    protected void writeState(ByteBuffer out) {
+        super.writeState(out);
+        out.put((byte) (conductive ? 1 : 0));
+        out.putInt(conductiveFor);
+    }
+
+    @Override
+    protected void readState(ByteBuffer in) {
+        super.readState(in);
+        conductive = in.get() != 0;
+        conductiveFor = in.getInt();
     }
 
     @Override
@@ -59,4 +124,16 @@ public class Transistor extends ConductorTile {
     protected boolean isValid(Tile tile) {
         return !(tile instanceof PSilicon) && !(tile instanceof NSilicon);
     }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (expiry != null && expiry.isScheduled()) {
+            conductiveFor = conductiveDelay - (int) (expiry.getExpiresAt() - expiry.getWheel().getTick());
+        }
+        out.defaultWriteObject();
+    }
+
+    @Override
+    public boolean isCompilable() {
+        return false; // Transistors switch depending on where the power came from, so they're kept as single tiles
+    }
 }
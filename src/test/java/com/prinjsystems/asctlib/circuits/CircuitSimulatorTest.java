@@ -0,0 +1,120 @@
+package com.prinjsystems.asctlib.circuits;
+
+import com.prinjsystems.asctlib.structures.ActionTile;
+import com.prinjsystems.asctlib.structures.GameMap;
+import com.prinjsystems.asctlib.structures.Layer;
+import com.prinjsystems.asctlib.structures.Tile;
+import com.prinjsystems.asctlib.structures.conductors.ConductorTile;
+import com.prinjsystems.asctlib.structures.conductors.semiconductors.NSilicon;
+import com.prinjsystems.asctlib.structures.conductors.semiconductors.PSilicon;
+import com.prinjsystems.asctlib.structures.conductors.semiconductors.Transistor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitSimulatorTest {
+    private static final int SIZE = 40;
+    private static final int TICKS = 300;
+
+    @Test
+    public void compiledNetsMatchTileByTile() {
+        for (long seed = 1; seed <= 12; seed++) {
+            Layer interpreted = randomLayer(seed);
+            Layer compiled = randomLayer(seed);
+            GameMap interpretedMap = new GameMap(new ArrayList<>(Collections.singletonList(interpreted)));
+            GameMap compiledMap = new GameMap(new ArrayList<>(Collections.singletonList(compiled)));
+            compiledMap.setCircuitCompilation(true);
+            compiledMap.getCircuitSimulator().setMinimumNetSize(4);
+
+            int[][] sources = randomSources(seed);
+            boolean anyCompiled = false;
+            for (int tick = 0; tick < TICKS; tick++) {
+                power(interpreted, sources, tick);
+                power(compiled, sources, tick);
+                interpretedMap.tick();
+                compiledMap.tick();
+                // Tiles between the ports of compiled nets are not powered, so only the rest can be compared
+                assertEquals("Seed " + seed + ", tick " + tick, state(interpreted), state(compiled));
+                anyCompiled |= hasCompiledNets(compiled);
+            }
+            assertTrue(anyCompiled);
+        }
+    }
+
+    private static Layer randomLayer(long seed) {
+        Random random = new Random(seed);
+        Layer layer = new Layer();
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int kind = random.nextInt(10);
+                if (kind < 4) {
+                    layer.addTile(new NSilicon(x, y));
+                } else if (kind < 7) {
+                    layer.addTile(new PSilicon(x, y));
+                } else if (kind < 8) {
+                    layer.addTile(new Transistor(x, y));
+                }
+            }
+        }
+        return layer;
+    }
+
+    private static int[][] randomSources(long seed) {
+        Random random = new Random(-seed);
+        int[][] sources = new int[4][];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = new int[]{random.nextInt(SIZE), random.nextInt(SIZE), 20 + random.nextInt(40)};
+        }
+        return sources;
+    }
+
+    private static void power(Layer layer, int[][] sources, int tick) {
+        for (int[] source : sources) {
+            Tile tile = layer.getTile(source[0], source[1]);
+            if (tick % source[2] == 3 && tile instanceof ActionTile) {
+                ((ActionTile) tile).trySetPowered(true, null);
+            }
+        }
+    }
+
+    private static String state(Layer layer) {
+        StringBuilder result = new StringBuilder();
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                Tile tile = layer.getTile(x, y);
+                if (tile instanceof Transistor) {
+                    Transistor transistor = (Transistor) tile;
+                    result.append(x).append(',').append(y).append(transistor.isPowered() ? 'P' : '-')
+                            .append(transistor.isConductive() ? 'C' : '-').append(' ');
+                } else if (tile instanceof ActionTile && isPort(layer, tile) && ((ActionTile) tile).isPowered()) {
+                    result.append(x).append(',').append(y).append('P').append(' ');
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    private static boolean isPort(Layer layer, Tile tile) {
+        for (Tile t : layer.getTilesAround(tile.getPosX(), tile.getPosY())) {
+            if (t != null && t.getClass() != tile.getClass()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasCompiledNets(Layer layer) {
+        List<ConductorTile> conductors = layer.getTiles(ConductorTile.class);
+        for (ConductorTile t : conductors) {
+            if (t.getNet() != null && t.getNet().isCompiled()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,107 @@
+package com.prinjsystems.asctlib.delta;
+
+import com.prinjsystems.asctlib.circuits.Net;
+import com.prinjsystems.asctlib.structures.ActionTile;
+import com.prinjsystems.asctlib.structures.GameMap;
+import com.prinjsystems.asctlib.structures.Layer;
+import com.prinjsystems.asctlib.structures.Tile;
+import com.prinjsystems.asctlib.structures.conductors.ConductorTile;
+import com.prinjsystems.asctlib.structures.conductors.semiconductors.NSilicon;
+import com.prinjsystems.asctlib.structures.conductors.semiconductors.PSilicon;
+import com.prinjsystems.asctlib.structures.conductors.semiconductors.Transistor;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class DeltaRecorderTest {
+    private static final int SIZE = 40;
+    private static final int TICKS = 300;
+
+    /**
+     * Only the chunks where something changed are checked, so a change that isn't notified would leave the replayed
+     * map behind the recorded one. Done with chunk sleeping disabled, when every chunk is awake but most of them
+     * don't change.
+     */
+    @Test
+    public void replayMatchesEveryTick() throws IOException {
+        for (long seed = 1; seed <= 4; seed++) {
+            Random random = new Random(seed);
+            Layer layer = randomLayer(random);
+            GameMap map = new GameMap(new ArrayList<>(Collections.singletonList(layer)));
+            map.setCircuitCompilation(seed % 2 == 0);
+            DeltaPlayer player = new DeltaPlayer();
+            DeltaRecorder recorder = new DeltaRecorder(map, new DeltaSink() {
+                @Override
+                public void write(DeltaFrame frame) throws IOException {
+                    player.apply(frame);
+                }
+
+                @Override
+                public void close() {
+                }
+            });
+            recorder.setKeyframeInterval(TICKS * 2); // Only the first frame is a keyframe
+            int x = random.nextInt(SIZE);
+            int y = random.nextInt(SIZE);
+            int period = 20 + random.nextInt(40);
+
+            for (int tick = 0; tick < TICKS; tick++) {
+                Tile source = layer.getTile(x, y);
+                if (tick % period == 3 && source instanceof ActionTile) {
+                    ((ActionTile) source).trySetPowered(true, null);
+                }
+                map.tick();
+                recorder.record();
+                assertEquals("Seed " + seed + ", tick " + tick, state(layer),
+                        state(player.getMap().getLayers().get(0)));
+            }
+        }
+    }
+
+    private static Layer randomLayer(Random random) {
+        Layer layer = new Layer();
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int kind = random.nextInt(20);
+                Tile tile = kind < 8 ? new NSilicon(x, y) : kind < 14 ? new PSilicon(x, y)
+                        : kind < 16 ? new Transistor(x, y) : null;
+                if (tile != null) {
+                    if (random.nextInt(3) == 0) {
+                        tile.setTemp(27 + random.nextFloat() * 100);
+                    }
+                    layer.addTile(tile);
+                }
+            }
+        }
+        return layer;
+    }
+
+    /**
+     * @return What is recorded of each cell of a layer: the type of its tile, if it is shown as powered and its
+     * quantized temperature.
+     */
+    private static String state(Layer layer) {
+        StringBuilder state = new StringBuilder();
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                Tile tile = layer.getTile(x, y);
+                if (tile == null) {
+                    state.append(';');
+                    continue;
+                }
+                boolean powered = tile instanceof ActionTile && ((ActionTile) tile).isPowered();
+                if (tile instanceof ConductorTile) {
+                    Net net = ((ConductorTile) tile).getNet();
+                    powered |= net != null && net.isLit();
+                }
+                state.append(tile.getClass().getSimpleName()).append(powered ? '#' : '.')
+                        .append(DeltaCodec.quantize(tile.getTemp())).append(';');
+            }
+        }
+        return state.toString();
+    }
+}
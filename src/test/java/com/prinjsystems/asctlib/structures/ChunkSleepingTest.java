@@ -0,0 +1,51 @@
+package com.prinjsystems.asctlib.structures;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkSleepingTest {
+    private static final int TICKS = 400;
+
+    @Test
+    public void sleepingMatchesAwake() {
+        for (long seed = 1; seed <= 4; seed++) {
+            Random random = new Random(seed);
+            Layer awake = TimerWheelTest.randomLayer(random);
+            random = new Random(seed);
+            Layer sleeping = TimerWheelTest.randomLayer(random);
+            sleeping.setChunkSleeping(true);
+            GameMap awakeMap = new GameMap(new ArrayList<>(Collections.singletonList(awake)));
+            GameMap sleepingMap = new GameMap(new ArrayList<>(Collections.singletonList(sleeping)));
+            // A single source, so that chunks have time to go to sleep between pulses
+            int x = random.nextInt(40);
+            int y = random.nextInt(40);
+            int period = 60 + random.nextInt(60);
+
+            boolean slept = false;
+            for (int tick = 0; tick < TICKS; tick++) {
+                if (tick % period == 3) {
+                    power(awake, x, y);
+                    power(sleeping, x, y);
+                }
+                awakeMap.tick();
+                sleepingMap.tick();
+                assertEquals("Seed " + seed + ", tick " + tick, TimerWheelTest.checksum(awake),
+                        TimerWheelTest.checksum(sleeping));
+                slept |= sleeping.countAwakeChunks() < awake.countAwakeChunks();
+            }
+            assertTrue(slept);
+        }
+    }
+
+    private static void power(Layer layer, int x, int y) {
+        Tile tile = layer.getTile(x, y);
+        if (tile instanceof ActionTile) {
+            ((ActionTile) tile).trySetPowered(true, null);
+        }
+    }
+}
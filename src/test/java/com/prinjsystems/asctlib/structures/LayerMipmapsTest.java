@@ -0,0 +1,48 @@
+package com.prinjsystems.asctlib.structures;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LayerMipmapsTest {
+    private static final int SIZE = 40;
+    private static final int TICKS = 300;
+
+    /**
+     * Only the chunks where something changed are painted again, so a change that isn't notified would leave a stale
+     * pixel. Done with chunk sleeping disabled, when every chunk is awake but most of them don't change.
+     */
+    @Test
+    public void mipmapMatchesTilesEveryTick() {
+        for (long seed = 1; seed <= 4; seed++) {
+            Random random = new Random(seed);
+            Layer layer = TimerWheelTest.randomLayer(random);
+            layer.setMipmapped(true);
+            GameMap map = new GameMap(new ArrayList<>(Collections.singletonList(layer)));
+            map.setCircuitCompilation(seed % 2 == 0);
+            int x = random.nextInt(SIZE);
+            int y = random.nextInt(SIZE);
+            int period = 20 + random.nextInt(40);
+
+            for (int tick = 0; tick < TICKS; tick++) {
+                Tile source = layer.getTile(x, y);
+                if (tick % period == 3 && source instanceof ActionTile) {
+                    ((ActionTile) source).trySetPowered(true, null);
+                }
+                map.tick();
+                BufferedImage image = layer.getMipmap(0);
+                for (int cellY = 0; cellY < SIZE; cellY++) {
+                    for (int cellX = 0; cellX < SIZE; cellX++) {
+                        Tile tile = layer.getTile(cellX, cellY);
+                        assertEquals("Seed " + seed + ", tick " + tick + ", cell " + cellX + "," + cellY,
+                                tile != null ? tile.getColor().getRGB() : 0, image.getRGB(cellX, cellY));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.prinjsystems.asctlib.structures;
+
+import com.prinjsystems.asctlib.structures.conductors.semiconductors.NSilicon;
+import java.util.ArrayList;
+import java.util.Collections;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+public class ThermalIntervalTest {
+    private static final float[] RECEIVER_TEMPS = {100, 140, 149, 151, 155, 160, 170, 190};
+    private static final float[] RECEIVER_AIR_RATIOS = {0, 0.01f, 0.03f, 0.1f};
+    private static final float GIVER_TEMP = 150;
+
+    /**
+     * A tile that only gives heat to a single tile, which never gives heat back, so the heat moved across that side
+     * is all the giver loses.
+     */
+    @Test
+    public void heatMovedAcrossASideIsBounded() {
+        for (int interval = 2; interval <= Layer.MAX_THERMAL_INTERVAL; interval++) {
+            double bound = GIVER_TEMP * (1 - Math.pow(1 - 0.025, interval - 1));
+            for (float receiverTemp : RECEIVER_TEMPS) {
+                for (float receiverAirRatio : RECEIVER_AIR_RATIOS) {
+                    float tickByTick = giverTemp(1, interval, receiverTemp, receiverAirRatio);
+                    float stepped = giverTemp(interval, interval, receiverTemp, receiverAirRatio);
+                    assertTrue(Math.abs(stepped - tickByTick) <= bound + 1e-3);
+                }
+            }
+        }
+    }
+
+    private static float giverTemp(int interval, int ticks, float receiverTemp, float receiverAirRatio) {
+        Layer layer = new Layer();
+        layer.setThermalInterval(interval);
+        Tile giver = new NSilicon(5, 5);
+        giver.airIrradiationRatio = 0;
+        giver.setTemp(GIVER_TEMP);
+        Tile receiver = new NSilicon(6, 5);
+        receiver.irradiationRatio = 0;
+        receiver.airIrradiationRatio = receiverAirRatio;
+        receiver.setTemp(receiverTemp);
+        layer.addTile(giver);
+        layer.addTile(receiver);
+        GameMap map = new GameMap(new ArrayList<>(Collections.singletonList(layer)));
+        for (int i = 0; i < ticks; i++) {
+            map.tick();
+        }
+        return giver.getTemp();
+    }
+}
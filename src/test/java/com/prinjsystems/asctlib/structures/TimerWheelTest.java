@@ -0,0 +1,120 @@
+package com.prinjsystems.asctlib.structures;
+
+import com.prinjsystems.asctlib.structures.conductors.semiconductors.LogicGate;
+import com.prinjsystems.asctlib.structures.conductors.semiconductors.NSilicon;
+import com.prinjsystems.asctlib.structures.conductors.semiconductors.PSilicon;
+import com.prinjsystems.asctlib.structures.conductors.semiconductors.Transistor;
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.zip.CRC32;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimerWheelTest {
+    private static final int SIZE = 40;
+
+    /**
+     * Checksums of the state of all the tiles of the layout built by {@link #randomLayer(Random)} with seed 1, after
+     * each tick, recorded when delays were still counted by the tiles in every update.
+     */
+    private static final long[] COUNTED = {
+            0x5f947e42L, 0x003193c2L, 0x8f7f86c3L, 0x3979d56bL, 0x5f14c762L, 0x600b8f22L, 0x1f4fbc88L, 0xbba6a828L,
+            0x81da7c70L, 0xbd50f620L, 0xa91903e5L, 0xfe8dbc60L, 0x61efdd33L, 0x16d51278L, 0xc6e8747aL, 0x2ebabb46L,
+            0x526efa4bL, 0x955dc591L, 0x17893a3dL, 0xea2b7a4dL, 0xa8168427L, 0x52d5ed02L, 0xc69665d2L, 0xaaee33c1L,
+            0x37fd83b3L, 0xa61d691bL, 0x4aa81355L, 0x75ca4353L, 0x924a4320L, 0x3c5d02e2L, 0x02393c26L, 0x52c3b38aL,
+            0xcc54ffd5L, 0x09aba888L, 0x26c8d93aL, 0x7ad90c88L, 0xdfbc0badL, 0x16a533b5L, 0x895818ceL, 0x42446b91L,
+            0xd859cb72L, 0x85df2968L, 0x99039b9dL, 0x8bc77260L, 0x25d2ea8dL, 0x5eea24aaL, 0x46b7c83eL, 0x34270e0fL,
+            0x53d4e235L, 0xd2907be9L, 0x2dbf9c24L, 0xaccfbf7dL, 0x50d0abb2L, 0xbe1cdd5bL, 0x55a31771L, 0x2e210f18L,
+            0xbe7324cdL, 0x0a7deb31L, 0xcbc7d5e3L, 0x26bb4c71L, 0x6c128c07L, 0x785168bcL, 0x74da9f98L, 0xa63a80e6L,
+            0xe5faeb64L, 0x81484b7cL, 0x53778049L, 0x0525cbf9L, 0x2bcfe4fdL, 0xde62a4efL, 0x479dd618L, 0xb3dc98bbL,
+            0x4c7e0e7dL, 0x97c7a3ffL, 0xb498598dL, 0xc281b4f4L, 0x663c4fd1L, 0x0b520e9fL, 0x9bb14854L, 0x5b3024ebL,
+            0x994e87c2L, 0xda329105L, 0xa8244de3L, 0x2d90fd49L, 0x277e21a7L, 0xcbbd8898L, 0x04ee0e94L, 0xf5604fe4L,
+            0xd0d632c9L, 0x7a5ee998L, 0x2141dc7eL, 0xd5e5a4b0L, 0x3a8efe6cL, 0xb0ad3d76L, 0x32edbb8bL, 0x70e46214L,
+            0x3ebfec61L, 0x3e7bff75L, 0x091db4afL, 0xc05c3a80L, 0x502d4b66L, 0xcec42727L, 0x79bd091dL, 0xc5dee375L,
+            0x2fc79427L, 0x27940d00L, 0xb2101cd0L, 0xe17b5808L, 0xfcc360ebL, 0x11d3b2e8L, 0x41702d3cL, 0xfa2622a3L,
+            0x995b4f29L, 0x31509392L, 0x32045660L, 0xd7f0afa6L, 0x91ddc24eL, 0xf1a073a0L, 0xfc334da8L, 0xac98120fL,
+            0x944d73f3L, 0xa8911d7aL, 0x1a1e00f3L, 0xc9852456L, 0xa9de7054L, 0x3ca22c92L, 0x3ca22c92L, 0xf9a07948L,
+            0x7b2a2d57L, 0x8b5641eeL, 0x13862495L, 0xf78aba03L, 0x45fa250dL, 0x67662aa4L, 0xb0b59841L, 0x0b0917c5L,
+            0x414eeba4L, 0x66c6ce68L, 0xdb3faf8bL, 0x930c1be4L, 0x588a9354L, 0x7a9f288dL, 0x943f6832L, 0x46fa55f0L,
+            0xa82873f6L, 0xa62cae8cL, 0x5325fa51L, 0x02c5df26L, 0x956a54a6L, 0x36957f62L,
+    };
+
+    @Test
+    public void delaysMatchCountedDelays() {
+        Random random = new Random(1);
+        Layer layer = randomLayer(random);
+        GameMap map = new GameMap(new ArrayList<>(Collections.singletonList(layer)));
+        int[][] sources = new int[5][];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = new int[]{random.nextInt(SIZE), random.nextInt(SIZE), 10 + random.nextInt(40)};
+        }
+
+        for (int tick = 0; tick < COUNTED.length; tick++) {
+            for (int[] source : sources) {
+                Tile tile = layer.getTile(source[0], source[1]);
+                if (tick % source[2] == 3 && tile instanceof ActionTile) {
+                    ((ActionTile) tile).trySetPowered(true, null);
+                }
+            }
+            map.tick();
+            assertEquals("Tick " + tick, COUNTED[tick], checksum(layer));
+        }
+    }
+
+    /**
+     * @return Layer with random semiconductors, some of them already hot.
+     */
+    static Layer randomLayer(Random random) {
+        Layer layer = new Layer();
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int kind = random.nextInt(20);
+                Tile tile = kind < 8 ? new NSilicon(x, y) : kind < 14 ? new PSilicon(x, y)
+                        : kind < 16 ? new Transistor(x, y) : kind < 17 ? new TestGate(x, y) : null;
+                if (tile != null) {
+                    if (random.nextInt(3) == 0) {
+                        tile.setTemp(27 + random.nextFloat() * 100);
+                    }
+                    layer.addTile(tile);
+                }
+            }
+        }
+        return layer;
+    }
+
+    /**
+     * @return Checksum of the temperature, power, recovery and conductivity of all the tiles of a layer.
+     */
+    static long checksum(Layer layer) {
+        StringBuilder state = new StringBuilder();
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                Tile tile = layer.getTile(x, y);
+                if (tile == null) {
+                    continue;
+                }
+                state.append(Float.floatToIntBits(tile.getTemp())).append(',');
+                if (tile instanceof ActionTile) {
+                    ActionTile actionTile = (ActionTile) tile;
+                    state.append(actionTile.isPowered()).append(actionTile.getUnpoweredFor());
+                }
+                if (tile instanceof Transistor) {
+                    state.append(((Transistor) tile).isConductive());
+                }
+                state.append(';');
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(state.toString().getBytes());
+        return crc.getValue();
+    }
+
+    private static class TestGate extends LogicGate {
+        TestGate(int posX, int posY) {
+            super(posX, posY, Color.GREEN, "Test", "Gate");
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.prinjsystems.asctlib.structures;
+
+import com.prinjsystems.asctlib.structures.conductors.ConductorTile;
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ViaIndexTest {
+    private Layer first;
+    private Layer second;
+    private ConductorTile firstVia;
+    private ConductorTile secondVia;
+    private GameMap map;
+
+    @Before
+    public void setUp() {
+        first = new Layer();
+        second = new Layer();
+        firstVia = new TestConductor(5, 5);
+        secondVia = new TestConductor(5, 5);
+        first.addTile(firstVia);
+        second.addTile(secondVia);
+        map = new GameMap(new ArrayList<>(Arrays.asList(first, second)));
+        firstVia.setConnectedTo(secondVia);
+    }
+
+    @Test
+    public void linkIsFoundOnBothSides() {
+        ViaIndex index = map.getViaIndex();
+        assertEquals(2, index.size());
+        assertEquals(Arrays.asList(firstVia, secondVia), index.getViasAt(5, 5));
+        assertTrue(index.getLinkedLayers(first).contains(second));
+        assertTrue(index.getLinkedLayers(second).contains(first));
+    }
+
+    @Test
+    public void removingFirstLayerUnlinksBothSides() {
+        assertTrue(map.removeLayer(first));
+        assertNull(firstVia.getConnectedTo());
+        assertNull(secondVia.getConnectedTo());
+        assertEquals(0, map.getViaIndex().size());
+    }
+
+    @Test
+    public void removingSecondLayerUnlinksBothSides() {
+        assertTrue(map.removeLayer(second));
+        assertNull(firstVia.getConnectedTo());
+        assertNull(secondVia.getConnectedTo());
+        assertEquals(0, map.getViaIndex().size());
+    }
+
+    @Test
+    public void removingLayerKeepsOtherLinks() {
+        Layer third = new Layer();
+        ConductorTile thirdVia = new TestConductor(7, 7);
+        ConductorTile otherVia = new TestConductor(7, 7);
+        third.addTile(thirdVia);
+        second.addTile(otherVia);
+        map.getLayers().add(third);
+        otherVia.setConnectedTo(thirdVia);
+
+        assertTrue(map.removeLayer(first));
+        assertSame(thirdVia, otherVia.getConnectedTo());
+        assertSame(otherVia, thirdVia.getConnectedTo());
+        assertEquals(2, map.getViaIndex().size());
+    }
+
+    private static class TestConductor extends ConductorTile {
+        TestConductor(int posX, int posY) {
+            super(posX, posY, Color.RED, "Test", "Conductor");
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.prinjsystems.asctlib.structures.conductors.light;
+
+import com.prinjsystems.asctlib.structures.GameMap;
+import com.prinjsystems.asctlib.structures.Layer;
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class PixelTest {
+    /**
+     * States of a row of pixels and a column going down from its end, tick by tick, in the layer before pixel
+     * groups. Pixels that were powered ticked every tick, so a pixel switched off by one before it in the layer
+     * spread it in the same tick, and the whole row goes off at once.
+     */
+    private static final String[] EXPECTED = {
+            "...... ...",
+            "...... ...",
+            "...... ...",
+            "...... ...",
+            "...... ...",
+            "...... ...",
+            "##.... ...",
+            "###... ...",
+            "####.. ...",
+            "#####. ...",
+            "###### ...",
+            "###### #..",
+            "###### ##.",
+            "###### ###",
+            "...... ###",
+            "...... .##",
+            "...... ..#",
+            "...... ...",
+            "...... ...",
+            "...... ..."
+    };
+
+    @Test
+    public void wavefrontKeepsLayerOrder() {
+        Layer layer = new Layer();
+        layer.setPixelWavefront(true);
+        for (int x = 0; x < 6; x++) {
+            layer.addTile(new TestPixel(x, 0));
+        }
+        for (int y = 1; y < 4; y++) {
+            layer.addTile(new TestPixel(5, y));
+        }
+        GameMap map = new GameMap(new ArrayList<>(Collections.singletonList(layer)));
+
+        for (int tick = 0; tick < EXPECTED.length; tick++) {
+            if (tick == 6) {
+                pixel(layer, 0, 0).trySetPowered(true, null);
+            } else if (tick == 14) {
+                pixel(layer, 0, 0).trySetPowered(false, null);
+            }
+            map.tick();
+            StringBuilder state = new StringBuilder();
+            for (int x = 0; x < 6; x++) {
+                state.append(pixel(layer, x, 0).isPowered() ? '#' : '.');
+            }
+            state.append(' ');
+            for (int y = 1; y < 4; y++) {
+                state.append(pixel(layer, 5, y).isPowered() ? '#' : '.');
+            }
+            assertEquals("Tick " + tick, EXPECTED[tick], state.toString());
+        }
+    }
+
+    private static Pixel pixel(Layer layer, int x, int y) {
+        return (Pixel) layer.getTile(x, y);
+    }
+
+    private static class TestPixel extends Pixel {
+        TestPixel(int posX, int posY) {
+            super(posX, posY, Color.WHITE, Color.BLACK, "Test", "Pixel");
+        }
+    }
+}